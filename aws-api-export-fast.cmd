@@ -0,0 +1 @@
+java -XX:SharedArchiveFile=build/maven/aws-api-export.jsa -Xshare:auto -XX:TieredStopAtLevel=1 -jar build/maven/aws-apigateway-swagger-exporter-0.0.1-SNAPSHOT-jar-with-dependencies.jar  %*
\ No newline at end of file
@@ -0,0 +1,9 @@
+#!/bin/bash
+
+# Build with: mvn -Pfast-start clean package
+DIR=build/maven
+ARCHIVE_OPTS=
+if [ -f $DIR/aws-api-export.jsa ]; then
+    ARCHIVE_OPTS=-XX:SharedArchiveFile=$DIR/aws-api-export.jsa
+fi
+java $ARCHIVE_OPTS -XX:TieredStopAtLevel=1 -jar $DIR/aws-apigateway-swagger-exporter-0.0.1-SNAPSHOT-jar-with-dependencies.jar "$@"
@@ -0,0 +1,101 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.bytecodestudio.apigexporter.stub.SyntheticApiGenerator;
+
+import io.swagger.models.Swagger;
+
+/**
+ * Serialization time of each output format on synthetic APIs, including compression.
+ * The document sizes are printed before the benchmarks run:
+ * <pre>
+ * mvn -Pbenchmark clean assembly:assembly
+ * java -cp build/maven/aws-apigateway-swagger-exporter-0.0.1-SNAPSHOT-jar-with-dependencies.jar \
+ *     com.bytecodestudio.apigexporter.OutputFormatBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputFormatBenchmark {
+
+	/**
+	 * medium: 200 resources, 3 methods each, 50 models; huge: 2000, 4, 400
+	 */
+	@Param({"medium", "huge"})
+	public String size;
+
+	@Param({"yaml", "json", "min.json", "smile", "cbor", "yaml.gz", "json.gz", "min.json.gz", "min.json.zst", "smile.zst", "cbor.zst"})
+	public String format;
+
+	private Swagger swagger;
+	private OutputFormat outputFormat;
+
+	@Setup
+	public void setUp() throws IOException {
+		swagger = createSwagger(size);
+		outputFormat = OutputFormat.fromName(format);
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		ExportMetrics.CountingOutputStream out = new ExportMetrics.CountingOutputStream(null);
+		outputFormat.write(swagger, out);
+		return out.getCount();
+	}
+
+	private static Swagger createSwagger(String size) throws IOException {
+		SyntheticApiGenerator generator = new SyntheticApiGenerator(1);
+		ApiSnapshot snapshot = "medium".equals(size)
+				? generator.generate("medium", 200, 3, 50)
+				: generator.generate("huge", 2000, 4, 400);
+		return new SwaggerTransformer().transform(snapshot, "benchmark.execute-api.us-east-1.amazonaws.com");
+	}
+
+	/**
+	 * Prints the size of the huge API in every format, relative to pretty-printed YAML.
+	 */
+	private static void printSizes() throws IOException {
+		Swagger swagger = createSwagger("huge");
+		long yamlSize = 0;
+		System.out.println(String.format("%-16s %12s %8s", "format", "bytes", "of yaml"));
+		for (OutputFormat outputFormat : OutputFormat.values()) {
+			ExportMetrics.CountingOutputStream out = new ExportMetrics.CountingOutputStream(null);
+			outputFormat.write(swagger, out);
+			if (outputFormat == OutputFormat.YAML) {
+				yamlSize = out.getCount();
+			}
+			System.out.println(String.format("%-16s %12d %7.1f%%", outputFormat.getName(), out.getCount(),
+					100.0 * out.getCount() / yamlSize));
+		}
+	}
+
+	public static void main(String[] args) throws IOException, RunnerException {
+		printSizes();
+		Options options = new OptionsBuilder()
+				.include(OutputFormatBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,210 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.bytecodestudio.apigexporter.stub.SyntheticApiGenerator;
+
+import io.swagger.models.Model;
+import io.swagger.models.Swagger;
+
+/**
+ * Throughput of each stage of the Swagger transformation on synthetic APIs, without network access.
+ * Run with the GC profiler to get the allocation rate per operation:
+ * <pre>
+ * mvn -Pbenchmark clean assembly:assembly
+ * java -cp build/maven/aws-apigateway-swagger-exporter-0.0.1-SNAPSHOT-jar-with-dependencies.jar \
+ *     com.bytecodestudio.apigexporter.SwaggerTransformBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SwaggerTransformBenchmark {
+
+	/**
+	 * small: 20 resources, 2 methods each, 10 models; medium: 200, 3, 50; huge: 2000, 4, 400
+	 */
+	@Param({"small", "medium", "huge"})
+	public String size;
+
+	private ApiSnapshot snapshot;
+	private Map<String, Model> definitions;
+	private ModelReferenceIndex modelReferences;
+	private Swagger swagger;
+	private List<ApiSnapshot.Method> methods;
+	private List<String> resourceIds;
+	private ModelSchemaCache warmModelSchemaCache;
+	private ExecutorService executor;
+
+	@Setup
+	public void setUp() throws IOException {
+		SyntheticApiGenerator generator = new SyntheticApiGenerator(1);
+		if ("small".equals(size)) {
+			snapshot = generator.generate("small", 20, 2, 10);
+		} else if ("medium".equals(size)) {
+			snapshot = generator.generate("medium", 200, 3, 50);
+		} else {
+			snapshot = generator.generate("huge", 2000, 4, 400);
+		}
+		warmModelSchemaCache = new ModelSchemaCache(ModelSchemaCache.DEFAULT_MAX_ENTRIES);
+		executor = ApiFetcher.newExecutor(4, false);
+		definitions = SwaggerTransformer.getDefinitions(snapshot, warmModelSchemaCache, null);
+		modelReferences = ModelReferenceIndex.build(definitions.values());
+		swagger = new SwaggerTransformer().transform(snapshot, "benchmark.execute-api.us-east-1.amazonaws.com");
+		methods = new ArrayList<ApiSnapshot.Method>();
+		resourceIds = new ArrayList<String>();
+		for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+			for (ApiSnapshot.Method method : resource.getMethods().values()) {
+				methods.add(method);
+				resourceIds.add(resource.getId());
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Benchmark
+	public Map<String, Model> getDefinitions() throws IOException {
+		return SwaggerTransformer.getDefinitions(snapshot, new ModelSchemaCache(ModelSchemaCache.DEFAULT_MAX_ENTRIES), null);
+	}
+
+	@Benchmark
+	public Map<String, Model> getDefinitionsParallel() throws IOException {
+		return SwaggerTransformer.getDefinitions(snapshot, new ModelSchemaCache(ModelSchemaCache.DEFAULT_MAX_ENTRIES), executor);
+	}
+
+	@Benchmark
+	public Map<String, Model> getDefinitionsCached() throws IOException {
+		return SwaggerTransformer.getDefinitions(snapshot, warmModelSchemaCache, null);
+	}
+
+	@Benchmark
+	public ModelReferenceIndex buildModelReferenceIndex() {
+		return ModelReferenceIndex.build(definitions.values());
+	}
+
+	@Benchmark
+	public void getParameter(Blackhole blackhole) {
+		for (ApiSnapshot.Method method : methods) {
+			for (Map.Entry<String, Boolean> parameterEntry : method.getRequestParameters().entrySet()) {
+				blackhole.consume(SwaggerTransformer.getParameter(parameterEntry));
+			}
+		}
+	}
+
+	@Benchmark
+	public void getIntegration(Blackhole blackhole) {
+		for (int i = 0; i < methods.size(); i++) {
+			blackhole.consume(SwaggerTransformer.getIntegration(methods.get(i).getIntegration(), resourceIds.get(i)));
+		}
+	}
+
+	@Benchmark
+	public void putIfNotNullOrEmpty(Blackhole blackhole) {
+		for (ApiSnapshot.Method method : methods) {
+			Map<String, Object> map = new HashMap<String, Object>();
+			SwaggerTransformer.putIfNotNullOrEmpty(map, "requestTemplates", method.getIntegration().getRequestTemplates());
+			SwaggerTransformer.putIfNotNullOrEmpty(map, "requestParameters", method.getIntegration().getRequestParameters());
+			blackhole.consume(map);
+		}
+	}
+
+	/**
+	 * Inlining removes definitions, so every operation works on a copy of the definitions map,
+	 * which is included in the measurement.
+	 */
+	@Benchmark
+	public void getBodyParameterAndResponseSchema(Blackhole blackhole) {
+		Swagger target = new Swagger();
+		target.setDefinitions(new HashMap<String, Model>(definitions));
+		for (ApiSnapshot.Method method : methods) {
+			if (method.getRequestModels() != null) {
+				for (String modelName : method.getRequestModels().values()) {
+					blackhole.consume(SwaggerTransformer.getBodyParameter(modelName, true, target, modelReferences));
+				}
+			}
+			for (ApiSnapshot.MethodResponse response : method.getMethodResponses().values()) {
+				if (response.getResponseModels() != null) {
+					for (String modelName : response.getResponseModels().values()) {
+						blackhole.consume(SwaggerTransformer.getResponseSchema(modelName, true, target, modelReferences));
+					}
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public Swagger transform() throws IOException {
+		return new SwaggerTransformer().transform(snapshot, "benchmark.execute-api.us-east-1.amazonaws.com");
+	}
+
+	@Benchmark
+	public long serializeJson() throws IOException {
+		return serialize(OutputFormat.JSON);
+	}
+
+	@Benchmark
+	public long serializeYaml() throws IOException {
+		return serialize(OutputFormat.YAML);
+	}
+
+	private long serialize(OutputFormat format) throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		format.write(swagger, out);
+		return out.count;
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(SwaggerTransformBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -1,506 +1,662 @@
 package com.bytecodestudio.apigexporter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.apigateway.AmazonApiGateway;
 import com.amazonaws.services.apigateway.model.ApiGateway;
-import com.amazonaws.services.apigateway.model.Integration;
-import com.amazonaws.services.apigateway.model.IntegrationResponse;
-import com.amazonaws.services.apigateway.model.Method;
-import com.amazonaws.services.apigateway.model.MethodResponse;
-import com.amazonaws.services.apigateway.model.Model;
-import com.amazonaws.services.apigateway.model.Models;
-import com.amazonaws.services.apigateway.model.Resource;
-import com.amazonaws.services.apigateway.model.Resources;
 import com.amazonaws.services.apigateway.model.RestApi;
+import com.amazonaws.services.apigateway.model.RestApis;
 import com.amazonaws.services.cloudfront.model.InvalidArgumentException;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import io.swagger.models.ArrayModel;
-import io.swagger.models.ComposedModel;
-import io.swagger.models.Info;
-import io.swagger.models.ModelImpl;
-import io.swagger.models.Operation;
-import io.swagger.models.Path;
-import io.swagger.models.RefModel;
-import io.swagger.models.Response;
-import io.swagger.models.Scheme;
 import io.swagger.models.Swagger;
-import io.swagger.models.auth.ApiKeyAuthDefinition;
-import io.swagger.models.auth.In;
-import io.swagger.models.parameters.BodyParameter;
-import io.swagger.models.parameters.HeaderParameter;
-import io.swagger.models.parameters.Parameter;
-import io.swagger.models.parameters.PathParameter;
-import io.swagger.models.parameters.QueryParameter;
-import io.swagger.models.properties.ArrayProperty;
-import io.swagger.models.properties.MapProperty;
-import io.swagger.models.properties.Property;
-import io.swagger.models.properties.PropertyBuilder;
-import io.swagger.models.properties.RefProperty;
-import io.swagger.models.properties.StringProperty;
-import io.swagger.util.Json;
-import io.swagger.util.Yaml;
 
 public class APIGExporter {
 
-	private static final String SECURITY_API_KEY = "api_key";
-	private static final String METHOD_REQUEST_HEADER = "method.request.header.";
-	private static final String METHOD_REQUEST_QUERYSTRING = "method.request.querystring.";
-	private static final String METHOD_REQUEST_PATH = "method.request.path.";
-    private static final String METHOD_RESPONSE_HEADER = "method.response.header.";
-	
-    private static final String DEFAULT_CONTENT_TYPE = "application/json";
-    private static final String EXTENSION_AUTH = "x-amazon-apigateway-auth";
-    private static final String EXTENSION_INTEGRATION = "x-amazon-apigateway-integration";
-
-    private static final String USER_AGENT = "AmazonApiGatewayExporter/1.0";
+	static final String USER_AGENT = "AmazonApiGatewayExporter/1.0";
+	
+	public static final int DEFAULT_CONCURRENCY = 8;
+	
+	/**
+	 * Runs asynchronous exports that do not bring their own executor. A fetch blocks its thread, so the pool
+	 * is bounded: at most this many exports run a step at a time, the others wait in the queue.
+	 */
+	static final int ASYNC_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static final Executor ASYNC_EXECUTOR = Executors.newFixedThreadPool(ASYNC_THREADS, ApiFetcher.newThreadFactory("apig-exporter-async-"));
+	private static final Executor CALLING_THREAD = Runnable::run;
+	private static final String HTTP_GET = "GET";
+	private static final int HTTP_OK = 200;
+	
+	/**
+	 * Prefixes of API ids and names in {@link #resolveRestApiIds(List)}.
+	 */
+	public static final String ID_PREFIX = "id:";
+	public static final String NAME_PREFIX = "name:";
 	
-    private static enum ConsumesProducesEnum {
-    	CONSUMES, PRODUCES
-    }
-    
 	private AWSCredentialsProvider credsProvider;
 	private String region;
-    
-    public APIGExporter(AWSCredentialsProvider credsProvider, String region) {
+	private String endpoint;
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private boolean virtualThreads;
+	private HalResponseCache responseCache;
+	private ExportMetrics metrics;
+	private AdaptiveLimiter limiter;
+	private RequestHedger hedger;
+	private PathFilter pathFilter;
+	private boolean embedded = true;
+	private boolean inlineSchemas = true;
+	private boolean canonical;
+	private EmbeddedHalReader embeddedReader;
+	private ClientConfiguration clientConfiguration = new ClientConfiguration().withUserAgent(USER_AGENT);
+	private ApiGateway apiGateway;
+	
+	public APIGExporter(AWSCredentialsProvider credsProvider, String region) {
+		this(credsProvider, region, getEndpoint(region));
+	}
+	
+	/**
+	 * @param endpoint API Gateway control plane endpoint, for example a local stub server
+	 */
+	public APIGExporter(AWSCredentialsProvider credsProvider, String region, String endpoint) {
 		this.credsProvider = credsProvider;
 		this.region = region;
-    	
-    }
-    
-	public String export(String restApiId, String format) throws IOException {
-		boolean inlineBodyParameterSchema = true;
-		boolean inlineResponseSchema = true;
-		
-        ClientConfiguration clientConfig = new ClientConfiguration().withUserAgent(USER_AGENT);
-		ApiGateway apiGateway = new AmazonApiGateway(getEndpoint(region)).with(credsProvider).with(clientConfig).getApiGateway();
-		RestApi restApi = apiGateway.getRestApiById(restApiId);
-		
-		String basePath = getBasePath(restApi);
-		Swagger swagger = new Swagger()
-				.info(new Info().title(restApi.getName()).description(restApi.getDescription()))
-				.host(restApiId + ".execute-api." + region + ".amazonaws.com")
-				.scheme(Scheme.HTTPS)
-				.basePath(basePath.isEmpty() ? "/" : basePath);
-		
-		swagger.setDefinitions(getDefinitions(restApi));
-		
-		Map<String, Integer> modelRefCount = new HashMap<String, Integer>();
-		processModelRefs(swagger.getDefinitions().values(), modelRefCount);
-		
-		boolean addApiKey = false;
-		boolean consumesDefaultContentType = false;
-		List<String> consumesContentType = null;
-		boolean producesDefaultContentType = false;
-		List<String> producesContentType = null;
-		Map<String, Path> paths = new HashMap<String, Path>();
-		for (Resources resources = restApi.getResources(); resources != null; resources = safeGetNext(resources)) {
-			for (Resource resource : resources.getItem()) {
-				Map<String, Method> resourceMethods = resource.getResourceMethods();
-				if (resourceMethods == null || resourceMethods.isEmpty()) {
-					continue;
-				}
-				Path path = new Path();			
-				for (Method method : resourceMethods.values()) {
-					Operation operation = new Operation();
-//					operation.setSummary(summary);
-//					operation.setDescription(description);
-					
-					Map<String, String> requestModels = method.getRequestModels();
-					if (requestModels != null && !requestModels.isEmpty()) {
-						String requestModelName = requestModels.get(DEFAULT_CONTENT_TYPE);
-						if (requestModelName == null) {
-							requestModelName = requestModels.values().iterator().next();
-						} else {
-							consumesDefaultContentType = true;
-						}
-						operation.addParameter(getBodyParameter(requestModelName, inlineBodyParameterSchema, swagger, modelRefCount));
-						updateOperationConsumesProduces(ConsumesProducesEnum.CONSUMES, operation, requestModels.keySet());
-					}
-					Map<String, Boolean> requestParameters = method.getRequestParameters();
-					if (requestParameters != null) {
-						for (Map.Entry<String, Boolean> parameterEntry : requestParameters.entrySet()) {
-							operation.addParameter(getParameter(parameterEntry));
-						}
-					}
-					Map<String, MethodResponse> methodResponses = method.getMethodResponses();
-					if (methodResponses != null) {
-						for (Map.Entry<String, MethodResponse> responseEntry : methodResponses.entrySet()) {
-							MethodResponse methodResponse = responseEntry.getValue();
-							Response response = new Response().headers(getResponseHeaders(methodResponse));
-							Map<String, String> responseModels = methodResponse.getResponseModels();
-							if (responseModels != null && !responseModels.isEmpty()) {
-								String responseModelName = responseModels.get(DEFAULT_CONTENT_TYPE);
-								if (responseModelName == null) {
-									responseModelName = responseModels.values().iterator().next();
-								} else {
-									producesDefaultContentType = true;
-								}
-								response.setDescription(responseModelName);
-								response.setSchema(getResponseSchema(responseModelName, inlineResponseSchema, swagger, modelRefCount));
-								updateOperationConsumesProduces(ConsumesProducesEnum.PRODUCES, operation, responseModels.keySet());
-							}
-							operation.addResponse(methodResponse.getStatusCode(), response);
-						}					
-					}
-					
-					String authType = method.getAuthorizationType();
-					if (authType != null) {
-						operation.setVendorExtension(EXTENSION_AUTH, Collections.singletonMap("type", authType));
-					}
+		this.endpoint = endpoint;
+	}
 	
-					try {
-						Integration integration = method.getMethodIntegration();
-						if (integration != null) {
-							operation.setVendorExtension(EXTENSION_INTEGRATION, getIntegration(integration, resource.getId()));
-						}
-					} catch (UnsupportedOperationException e) {
-						//Ignore
-					}
-					
-					Boolean apiKeyRequired = method.getApiKeyRequired();
-					if (apiKeyRequired != null && apiKeyRequired.booleanValue()) {
-						operation.addSecurity(SECURITY_API_KEY, Collections.<String>emptyList());
-						addApiKey = true;
-					}
+	/**
+	 * @param apiGateway client shared with other exporters, see {@link APIGExporterFactory}
+	 * @param credsProvider signs the requests for embedded resources, which do not go through the client
+	 */
+	public APIGExporter(ApiGateway apiGateway, AWSCredentialsProvider credsProvider, String region, String endpoint) {
+		this.apiGateway = apiGateway;
+		this.credsProvider = credsProvider;
+		this.region = region;
+		this.endpoint = endpoint;
+	}
 	
-					List<String> operationProduces = operation.getProduces();
-					if (operationProduces != null && !operationProduces.isEmpty()) {
-						if (producesContentType == null) {
-							producesContentType = operationProduces;
-						} else {
-							producesContentType.retainAll(operationProduces);
-						}
+	/**
+	 * Sets the number of HAL requests issued in parallel while fetching resources, methods and integrations.
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+	
+	/**
+	 * Runs fetch workers on virtual threads when the JDK supports them.
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
+	/**
+	 * Sets the cache for fetched HAL responses, null to always fetch from API Gateway.
+	 */
+	public void setResponseCache(HalResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+	
+	/**
+	 * Sets the collector for phase timings and HAL request statistics, null to disable metrics.
+	 */
+	public void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	public ExportMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the limiter that paces HAL requests and retries throttled ones. Exporters that share a limiter
+	 * share the request budget of the account. By default each exporter creates its own limiter,
+	 * starting at the concurrency and growing up to {@link AdaptiveLimiter#DEFAULT_MAX_LIMIT} requests in flight.
+	 */
+	public synchronized void setLimiter(AdaptiveLimiter limiter) {
+		this.limiter = limiter;
+	}
+	
+	public synchronized AdaptiveLimiter getLimiter() {
+		if (limiter == null) {
+			limiter = new AdaptiveLimiter(concurrency, Math.max(concurrency, AdaptiveLimiter.DEFAULT_MAX_LIMIT));
+		}
+		return limiter;
+	}
+	
+	/**
+	 * Sets the hedger that sends a duplicate of embedded HAL page requests slower than most recent ones,
+	 * null to never hedge, which is the default. Links followed without embedding are never hedged.
+	 */
+	public synchronized void setHedger(RequestHedger hedger) {
+		this.hedger = hedger;
+	}
+	
+	public synchronized RequestHedger getHedger() {
+		return hedger;
+	}
+	
+	/**
+	 * Exports only the resources whose path matches the filter, null to export all resources.
+	 * Resources that do not match are skipped before their methods and integrations are fetched.
+	 */
+	public void setPathFilter(PathFilter pathFilter) {
+		this.pathFilter = pathFilter;
+	}
+	
+	/**
+	 * Inlines request and response models that no other model references instead of referencing
+	 * their definitions. Enabled by default.
+	 */
+	public void setInlineSchemas(boolean inlineSchemas) {
+		this.inlineSchemas = inlineSchemas;
+	}
+	
+	/**
+	 * Sorts paths, definitions, responses and extension maps by key, so that exports of an unchanged API
+	 * are identical. By default paths and definitions are in no particular order.
+	 */
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+	
+	/**
+	 * Reads resources with their methods and integrations embedded, in pages of the maximum size,
+	 * which takes a few requests instead of several per method. Enabled by default; endpoints that
+	 * do not support embedding are detected on the first export and then traversed link by link.
+	 */
+	public synchronized void setEmbedded(boolean embedded) {
+		this.embedded = embedded;
+	}
+	
+	/**
+	 * Sets the configuration of the API Gateway client, before the first export. Its timeouts, proxy and
+	 * retries also apply to the requests for embedded resources, which do not go through the client.
+	 */
+	public synchronized void setClientConfiguration(ClientConfiguration clientConfiguration) {
+		this.clientConfiguration = clientConfiguration;
+	}
+	
+	/**
+	 * Returns the ids of all REST APIs in the region, following result pages.
+	 */
+	public List<String> getRestApiIds() {
+		return getLimiter().execute(ExportMetrics.LINK_RESTAPI, metrics, new AdaptiveLimiter.Call<List<String>>() {
+			@Override
+			public List<String> call() {
+				List<String> result = new ArrayList<String>();
+				for (RestApis restApis = getApiGateway().getRestApis(); restApis != null; restApis = safeGetNext(restApis)) {
+					for (RestApi restApi : restApis.getItem()) {
+						result.add(restApi.getId());
 					}
-					List<String> operationConsumes = operation.getConsumes();
-					if (operationConsumes != null && !operationConsumes.isEmpty()) {
-						if (consumesContentType == null) {
-							consumesContentType = operationConsumes;
-						} else {
-							consumesContentType.retainAll(operationConsumes);
+				}
+				return result;
+			}
+		});
+	}
+	
+	/**
+	 * Resolves API ids and names to the ids of the APIs in the region. The APIs of the region are listed and
+	 * each entry is matched against their ids and names, as names can look like ids. An entry prefixed with
+	 * {@code id:} or {@code name:} only matches an id or a name; if all entries are prefixed with {@code id:},
+	 * the APIs are not listed.
+	 *
+	 * @throws IllegalArgumentException if no API, or more than one API, matches an entry
+	 */
+	public List<String> resolveRestApiIds(List<String> idsOrNames) {
+		boolean allIds = true;
+		for (String idOrName : idsOrNames) {
+			allIds &= idOrName.startsWith(ID_PREFIX);
+		}
+		final Set<String> ids = new HashSet<String>();
+		final Map<String, List<String>> idsByName = new HashMap<String, List<String>>();
+		if (!allIds) {
+			listRestApis(ids, idsByName);
+		}
+		List<String> result = new ArrayList<String>();
+		for (String idOrName : idsOrNames) {
+			if (idOrName.startsWith(ID_PREFIX)) {
+				//Not checked, exporting an unknown id fails like any other export
+				result.add(idOrName.substring(ID_PREFIX.length()));
+				continue;
+			}
+			Set<String> matches = new LinkedHashSet<String>();
+			String name = idOrName;
+			if (idOrName.startsWith(NAME_PREFIX)) {
+				name = idOrName.substring(NAME_PREFIX.length());
+			} else if (ids.contains(idOrName)) {
+				matches.add(idOrName);
+			}
+			if (idsByName.containsKey(name)) {
+				matches.addAll(idsByName.get(name));
+			}
+			if (matches.size() != 1) {
+				throw new IllegalArgumentException((matches.isEmpty() ? "No API" : matches.size() + " APIs") + " match " + idOrName
+						+ " in " + region + (matches.size() > 1 ? ", prefix it with " + ID_PREFIX + " or " + NAME_PREFIX : ""));
+			}
+			result.add(matches.iterator().next());
+		}
+		return result;
+	}
+	
+	/**
+	 * Lists the APIs of the region into their ids and their ids by name.
+	 */
+	private void listRestApis(final Set<String> ids, final Map<String, List<String>> idsByName) {
+		getLimiter().execute(ExportMetrics.LINK_RESTAPI, metrics, new AdaptiveLimiter.Call<Void>() {
+			@Override
+			public Void call() {
+				for (RestApis restApis = getApiGateway().getRestApis(); restApis != null; restApis = safeGetNext(restApis)) {
+					for (RestApi restApi : restApis.getItem()) {
+						ids.add(restApi.getId());
+						List<String> namedIds = idsByName.get(restApi.getName());
+						if (namedIds == null) {
+							namedIds = new ArrayList<String>();
+							idsByName.put(restApi.getName(), namedIds);
 						}
+						namedIds.add(restApi.getId());
 					}
-					
-					path.set(method.getHttpMethod().toLowerCase(), operation);
 				}
-				String resourcePath = resource.getPath();
-				paths.put(resourcePath.substring(basePath.length()), path);
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * Returns a fingerprint that changes when the API metadata, its latest deployment or its resources change,
+	 * for an export with the settings of this exporter. Much cheaper than an export, see {@link ApiFingerprint}.
+	 */
+	public String getFingerprint(String restApiId) {
+		return getFingerprint(restApiId, newOptions());
+	}
+	
+	/**
+	 * Returns a fingerprint that also changes when the options that shape the document change.
+	 */
+	public String getFingerprint(final String restApiId, final ExportOptions options) {
+		long start = ExportMetrics.start();
+		String fingerprint = getLimiter().execute(ExportMetrics.LINK_RESTAPI, metrics, new AdaptiveLimiter.Call<String>() {
+			@Override
+			public String call() {
+				return ApiFingerprint.compute(getApiGateway().getRestApiById(restApiId), options);
 			}
+		});
+		recordPhase(ExportMetrics.PHASE_FINGERPRINT, start);
+		return fingerprint;
+	}
+	
+	/**
+	 * Returns options with the settings of this exporter, to be changed for one export.
+	 */
+	public ExportOptions newOptions() {
+		return new ExportOptions()
+				.withInlineBodyParameterSchema(inlineSchemas)
+				.withInlineResponseSchema(inlineSchemas)
+				.withCanonical(canonical)
+				.withPathFilter(pathFilter);
+	}
+	
+	/**
+	 * Fetches, transforms and writes the API to the sink of the options as a chain of steps on the executor
+	 * of the options. The calling thread does not wait, and no thread waits between the steps, so many
+	 * exports can be composed on a small executor. The fetch still blocks its thread while it waits for
+	 * its HAL requests, which run on a worker pool per export as with the blocking methods. Without an executor,
+	 * the steps run on a shared pool of {@link #ASYNC_THREADS} threads.
+	 *
+	 * @return completed when the document has been written, or exceptionally with the failure of the export,
+	 * including an {@link IllegalArgumentException} if the options have no sink
+	 */
+	public CompletableFuture<Void> exportAsync(final String restApiId, ExportOptions exportOptions) {
+		final ExportOptions options = new ExportOptions(exportOptions);
+		if (options.getSink() == null) {
+			CompletableFuture<Void> failed = new CompletableFuture<Void>();
+			failed.completeExceptionally(new IllegalArgumentException("No sink to write the export of " + restApiId + " to"));
+			return failed;
 		}
-		if (addApiKey) {
-			swagger.addSecurityDefinition(SECURITY_API_KEY, 
-					new ApiKeyAuthDefinition().name("x-api-key").in(In.HEADER));
+		Executor executor = options.getExecutor() != null ? options.getExecutor() : ASYNC_EXECUTOR;
+		if (options.isStreaming()) {
+			//A single step, the resources are fetched while the document is written
+			return CompletableFuture.runAsync(() -> unchecked(() -> exportStreaming(restApiId, options.isRefresh(), options,
+					Collections.singletonList(options.getFormat()), Collections.singletonList(options.getSink()))), executor);
 		}
-		swagger.setPaths(paths);
-		if (producesDefaultContentType) {
-			swagger.addProduces(DEFAULT_CONTENT_TYPE);
+		return CompletableFuture.supplyAsync(
+				() -> unchecked(() -> fetchSnapshot(restApiId, options.isRefresh(), options.getPathFilter())), executor)
+				.thenApplyAsync(fetched -> unchecked(() -> transform(fetched, options)), executor)
+				.thenAcceptAsync(swagger -> unchecked(() -> write(swagger, options.getFormat(), options.getSink())), executor);
+	}
+	
+	public String export(String restApiId, String format) throws IOException {
+		OutputFormat outputFormat = OutputFormat.fromName(format);
+		if (outputFormat == null || outputFormat.isBinary()) {
+			throw new InvalidArgumentException("Unsupported output format: " + format);
 		}
-		if (producesContentType != null) {
-			for (String contentType : producesContentType) {
-				swagger.addProduces(contentType);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		export(restApiId, outputFormat, out);
+		return out.toString("UTF-8");
+	}
+	
+	/**
+	 * Streams the document to the given stream, which is flushed but not closed.
+	 * Runs {@link #exportAsync(String, ExportOptions)} on the calling thread.
+	 */
+	public void export(String restApiId, OutputFormat format, OutputStream out) throws IOException {
+		join(exportAsync(restApiId, newOptions().withFormat(format).withSink(out).withExecutor(CALLING_THREAD)));
+	}
+	
+	public void export(String restApiId, OutputFormat format, WritableByteChannel channel) throws IOException {
+		export(restApiId, format, Channels.newOutputStream(channel));
+	}
+	
+	/**
+	 * Fetches the API and builds the Swagger model, which can then be written in several formats
+	 * with {@link OutputFormat#write(Swagger, OutputStream)} without fetching again.
+	 */
+	public Swagger exportSwagger(String restApiId) throws IOException {
+		return exportSwagger(restApiId, false);
+	}
+	
+	/**
+	 * @param refresh ignore cached responses and replace them with freshly fetched ones,
+	 * used when the API fingerprint shows that the API has changed
+	 */
+	public Swagger exportSwagger(String restApiId, boolean refresh) throws IOException {
+		return transform(fetchSnapshot(restApiId, refresh));
+	}
+	
+	/**
+	 * Fetches the API without transforming it, to be written with {@link #write(ApiSnapshot, OutputFormat, OutputStream)}
+	 * or transformed with {@link #transform(ApiSnapshot)}.
+	 *
+	 * @param refresh ignore cached responses and replace them with freshly fetched ones
+	 */
+	public ApiSnapshot fetchSnapshot(String restApiId, boolean refresh) throws IOException {
+		return fetchSnapshot(restApiId, refresh, pathFilter);
+	}
+	
+	private ApiSnapshot fetchSnapshot(String restApiId, boolean refresh, PathFilter pathFilter) throws IOException {
+		long start = ExportMetrics.start();
+		RestApi restApi = getRestApi(restApiId);
+		ExecutorService executor = ApiFetcher.newExecutor(concurrency, virtualThreads);
+		try {
+			ApiSnapshot snapshot = newFetcher(executor, restApiId, refresh, pathFilter).fetch(restApi);
+			recordPhase(ExportMetrics.PHASE_FETCH, start);
+			if (responseCache != null) {
+				responseCache.trim();
 			}
+			return snapshot;
+		} finally {
+			executor.shutdownNow();
 		}
-		if (consumesDefaultContentType) {
-			swagger.addConsumes(DEFAULT_CONTENT_TYPE);
+	}
+	
+	/**
+	 * Fetches the resource list first, then fetches, transforms and writes one resource after the other,
+	 * see {@link ApiFetcher#fetchOutline(RestApi)}. Unlike {@link #write(ApiSnapshot, OutputFormat, OutputStream)},
+	 * which needs the complete snapshot, memory use is bounded by the resources in flight, at most the concurrency.
+	 * The document is written in each format to the stream at the same index, the streams are flushed but not closed.
+	 *
+	 * @param refresh ignore cached responses and replace them with freshly fetched ones
+	 */
+	public void exportStreaming(String restApiId, boolean refresh, List<OutputFormat> formats, List<OutputStream> outs) throws IOException {
+		exportStreaming(restApiId, refresh, newOptions(), formats, outs);
+	}
+	
+	private void exportStreaming(String restApiId, boolean refresh, ExportOptions options,
+			List<OutputFormat> formats, List<OutputStream> outs) throws IOException {
+		long start = ExportMetrics.start();
+		RestApi restApi = getRestApi(restApiId);
+		ExecutorService executor = ApiFetcher.newExecutor(concurrency, virtualThreads);
+		try {
+			ApiFetcher fetcher = newFetcher(executor, restApiId, refresh, options.getPathFilter());
+			ApiSnapshot outline = fetcher.fetchOutline(restApi);
+			recordPhase(ExportMetrics.PHASE_FETCH, start);
+			
+			start = ExportMetrics.start();
+			List<ExportMetrics.CountingOutputStream> counters = new ArrayList<ExportMetrics.CountingOutputStream>();
+			List<StreamingSwaggerWriter> writers = new ArrayList<StreamingSwaggerWriter>();
+			for (int i = 0; i < formats.size(); i++) {
+				ExportMetrics.CountingOutputStream counter = new ExportMetrics.CountingOutputStream(outs.get(i));
+				counters.add(counter);
+				writers.add(new StreamingSwaggerWriter(formats.get(i), counter));
+			}
+			StreamingSwaggerWriter.write(newTransformer(executor, options), outline, getHost(outline),
+					fetcher.newResourceLoader(concurrency), writers);
+			//Includes fetching the methods, which overlaps with the transformation and the serialization
+			recordPhase(ExportMetrics.PHASE_STREAM, start);
+			for (int i = 0; i < formats.size(); i++) {
+				recordOutput(formats.get(i), start, counters.get(i));
+			}
+			if (responseCache != null) {
+				responseCache.trim();
+			}
+		} finally {
+			executor.shutdownNow();
 		}
-		if (consumesContentType != null) {
-			for (String contentType : consumesContentType) {
-				swagger.addConsumes(contentType);
+	}
+	
+	/**
+	 * The HAL client does not expose the response of the lookup, so it is recorded and traced without bytes.
+	 */
+	private RestApi getRestApi(final String restApiId) {
+		long start = ExportMetrics.start();
+		String path = "/restapis/" + restApiId;
+		RestApi restApi;
+		try {
+			restApi = getLimiter().execute(ExportMetrics.LINK_RESTAPI, metrics, new AdaptiveLimiter.Call<RestApi>() {
+				@Override
+				public RestApi call() {
+					RestApi restApi = getApiGateway().getRestApiById(restApiId);
+					//Load the API within the limiter, the fetcher reads its properties afterwards
+					restApi.getName();
+					return restApi;
+				}
+			});
+		} catch (RuntimeException e) {
+			if (metrics != null) {
+				int status = e instanceof AmazonServiceException ? ((AmazonServiceException) e).getStatusCode() : 0;
+				metrics.traceRequest(ExportMetrics.LINK_RESTAPI, start, path, HTTP_GET, status, -1);
 			}
+			throw e;
 		}
-		
-		if ("yaml".equals(format)) {
-			return Yaml.pretty().writeValueAsString(swagger); 
-		} else if ("json".equals(format)) {
-			return Json.pretty().writeValueAsString(swagger); 
-		} else {
-			throw new InvalidArgumentException("Unsupported output format: " + format);
+		if (metrics != null) {
+			metrics.recordRequest(ExportMetrics.LINK_RESTAPI, start, -1);
+			metrics.traceRequest(ExportMetrics.LINK_RESTAPI, start, path, HTTP_GET, HTTP_OK, -1);
 		}
+		return restApi;
 	}
-
-	private static Resources safeGetNext(Resources resources) {
+	
+	private ApiFetcher newFetcher(ExecutorService executor, String restApiId, boolean refresh, PathFilter pathFilter) {
+		String apiUrl = endpoint + "/restapis/" + restApiId;
+		ApiFetcher fetcher = new ApiFetcher(executor, responseCache, apiUrl, refresh);
+		fetcher.setMetrics(metrics);
+		fetcher.setLimiter(getLimiter());
+		fetcher.setPathFilter(pathFilter);
+		fetcher.setEmbeddedReader(getEmbeddedReader());
+		return fetcher;
+	}
+	
+	/**
+	 * Builds the complete Swagger model of a fetched API.
+	 */
+	public Swagger transform(ApiSnapshot snapshot) throws IOException {
+		return transform(snapshot, newOptions());
+	}
+	
+	/**
+	 * Builds the complete Swagger model of a fetched API with the inlining and ordering of the options.
+	 */
+	public Swagger transform(ApiSnapshot snapshot, ExportOptions options) throws IOException {
+		ExecutorService executor = ApiFetcher.newExecutor(concurrency, virtualThreads);
 		try {
-			return resources.getNext();
-		} catch (UnsupportedOperationException e) {
-			return null;
+			long start = ExportMetrics.start();
+			Swagger swagger = newTransformer(executor, options).transform(snapshot, getHost(snapshot));
+			recordPhase(ExportMetrics.PHASE_TRANSFORM, start);
+			return swagger;
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
-	private static Models safeGetNext(Models models) {
-		try {
-			return models.getNext();
-		} catch (UnsupportedOperationException e) {
-			return null;
-		}
+	/**
+	 * Writes the document in the given format, the stream is flushed but not closed.
+	 */
+	public void write(Swagger swagger, OutputFormat format, OutputStream out) throws IOException {
+		long start = ExportMetrics.start();
+		ExportMetrics.CountingOutputStream counter = new ExportMetrics.CountingOutputStream(out);
+		format.write(swagger, counter);
+		recordPhase(ExportMetrics.PHASE_SERIALIZE, start);
+		recordOutput(format, start, counter);
 	}
 
-	private static void updateOperationConsumesProduces(ConsumesProducesEnum consumesProduces, Operation operation, Collection<String> contentTypes) {
-		Set<String> result = new HashSet<String>(contentTypes);
-		result.remove(DEFAULT_CONTENT_TYPE);
-		if (!result.isEmpty()) {
-			List<String> oldValue = consumesProduces == ConsumesProducesEnum.CONSUMES 
-					? operation.getConsumes() : operation.getProduces();
-			@SuppressWarnings("unchecked")
-			Set<String> oldValueSet = new LinkedHashSet<String>(oldValue != null ? oldValue : Collections.EMPTY_LIST);
-			oldValueSet.addAll(result);
-			if (consumesProduces == ConsumesProducesEnum.CONSUMES) {
-				operation.setConsumes(new ArrayList<String>(oldValueSet));
-			} else {
-				operation.setProduces(new ArrayList<String>(oldValueSet));
-			}
-		}
+	/**
+	 * Transforms and writes the document in one pass, without building the complete Swagger model,
+	 * see {@link StreamingSwaggerWriter}. Memory use beyond the snapshot is bounded by the largest resource.
+	 * The stream is flushed but not closed.
+	 */
+	public void write(ApiSnapshot snapshot, OutputFormat format, OutputStream out) throws IOException {
+		write(snapshot, newOptions().withFormat(format).withSink(out));
 	}
 
-	private static Property getResponseSchema(String responseModelName, boolean inlineResponseSchema,
-			Swagger swagger, Map<String, Integer> modelRefCount) {
-		Property schema = new RefProperty(responseModelName);
-		if (inlineResponseSchema && !modelRefCount.containsKey(responseModelName)) {
-			io.swagger.models.Model model = swagger.getDefinitions().get(responseModelName);
-			//If empty model was generated for response type
-			if (model instanceof ModelImpl) {
-				Map<String, Property> modelProperties = ((ModelImpl) model).getProperties();
-				if (modelProperties == null || modelProperties.isEmpty()) {
-					String type = ((ModelImpl) model).getType();
-					if (type != null) {
-						Property property = PropertyBuilder.build(type, ((ModelImpl) model).getFormat(), null);
-						if (property != null) {
-							schema = property;
-							swagger.getDefinitions().remove(responseModelName);
-						}
-					}
-				}
-			}
+	private void write(ApiSnapshot snapshot, ExportOptions options) throws IOException {
+		ExecutorService executor = ApiFetcher.newExecutor(concurrency, virtualThreads);
+		try {
+			long start = ExportMetrics.start();
+			ExportMetrics.CountingOutputStream counter = new ExportMetrics.CountingOutputStream(options.getSink());
+			new StreamingSwaggerWriter(options.getFormat(), counter)
+					.write(newTransformer(executor, options), snapshot, getHost(snapshot));
+			recordPhase(ExportMetrics.PHASE_STREAM, start);
+			//Includes the transformation, which overlaps with the serialization
+			recordOutput(options.getFormat(), start, counter);
+		} finally {
+			executor.shutdownNow();
 		}
-		return schema;
 	}
 
-	private static Map<String, Property> getResponseHeaders(MethodResponse methodResponse) {
-		Map<String, Property> result = null;
-		Map<String, Boolean> responseParameters = methodResponse.getResponseParameters();
-		if (responseParameters != null) {
-			for (Map.Entry<String, Boolean> responseParameterEntry : responseParameters.entrySet()) {
-				String parameterName = responseParameterEntry.getKey();
-				if (parameterName.startsWith(METHOD_RESPONSE_HEADER)) {
-					StringProperty headerProperty = new StringProperty();
-					headerProperty.setRequired(responseParameterEntry.getValue());
-					if (result == null) {
-						result = new LinkedHashMap<String, Property>();
-					}
-					result.put(parameterName.substring(METHOD_RESPONSE_HEADER.length()), headerProperty);
-				} else {
-					throw new UnsupportedOperationException("Unsupported response parameter type " + parameterName);
-				}
-			}
-		}
-		return result;
+	private SwaggerTransformer newTransformer(ExecutorService executor, ExportOptions options) {
+		SwaggerTransformer transformer = new SwaggerTransformer(
+				options.isInlineBodyParameterSchema(), options.isInlineResponseSchema(), executor);
+		transformer.setMetrics(metrics);
+		transformer.setCanonical(options.isCanonical());
+		return transformer;
 	}
 
-	private static BodyParameter getBodyParameter(String requestModelName, boolean inlineBodyParameterSchema, 
-			Swagger swagger, Map<String, Integer> modelRefCount) {
-		BodyParameter parameter = new BodyParameter().name("body").description(requestModelName);
-		if (inlineBodyParameterSchema && !modelRefCount.containsKey(requestModelName)) {
-			parameter.setSchema(swagger.getDefinitions().remove(requestModelName));
-		} else {
-			parameter.setSchema(new RefModel(requestModelName));
-		}
-		return parameter;
+	/**
+	 * A step of an asynchronous export.
+	 */
+	private interface Step<T> {
+		T run() throws IOException;
 	}
 
-	private static Map<String, Object> getIntegration(Integration integration, String defaultCacheNamespace) {
-		Map<String, Object> integrationMap = new HashMap<String, Object>();
-		putIfNotNullOrEmpty(integrationMap, "type", integration.getType());
-		putIfNotNullOrEmpty(integrationMap, "uri", integration.getUri());
-		putIfNotNullOrEmpty(integrationMap, "httpMethod", integration.getHttpMethod());
-		putIfNotNullOrEmpty(integrationMap, "credentials", integration.getCredentials());
-		String cacheNamespace = integration.getCacheNamespace();
-		if (cacheNamespace != null && !cacheNamespace.equals(defaultCacheNamespace)) {
-			putIfNotNullOrEmpty(integrationMap, "cacheNamespace", cacheNamespace);
-		}
-		putIfNotNullOrEmpty(integrationMap, "cacheKeyParameters",  integration.getCacheKeyParameters());
-		putIfNotNullOrEmpty(integrationMap, "requestTemplates", integration.getRequestTemplates());
-		putIfNotNullOrEmpty(integrationMap, "requestParameters",  integration.getRequestParameters());
-		
-		Map<String, IntegrationResponse> integrationResponses = integration.getIntegrationResponses();
-		if (integrationResponses != null && !integrationResponses.isEmpty()) {
-			Map<String, Object> responsesMap = new HashMap<String, Object>();
-			for (IntegrationResponse integrationResponse : integrationResponses.values()) {
-				String pattern = integrationResponse.getSelectionPattern();
-				if (pattern == null) {
-					pattern = "default";
-				}
-				Map<String, Object> map = new HashMap<String, Object>();
-				putIfNotNullOrEmpty(map, "statusCode",  integrationResponse.getStatusCode());
-				putIfNotNullOrEmpty(map, "responseParameters",  integrationResponse.getResponseParameters());
-				putIfNotNullOrEmpty(map, "responseTemplates", integrationResponse.getResponseTemplates());
-				putIfNotNullOrEmpty(responsesMap, pattern, map);
-			}
-			putIfNotNullOrEmpty(integrationMap, "responses", responsesMap);
+	private interface VoidStep {
+		void run() throws IOException;
+	}
+
+	private static <T> T unchecked(Step<T> step) {
+		try {
+			return step.run();
+		} catch (IOException e) {
+			throw new CompletionException(e);
 		}
-		return integrationMap;
 	}
 
-	private static Parameter getParameter(Map.Entry<String, Boolean> parameterEntry) {
-		Parameter parameter;
-		String parameterName = parameterEntry.getKey();
-		if (parameterName.startsWith(METHOD_REQUEST_PATH)) {
-			parameter = new PathParameter()
-					.name(parameterName.substring(METHOD_REQUEST_PATH.length()))
-					.type("string"); 	//There is no type information for params in API gateway
-		} else if (parameterName.startsWith(METHOD_REQUEST_QUERYSTRING)) {
-			parameter = new QueryParameter() 
-					.name(parameterName.substring(METHOD_REQUEST_QUERYSTRING.length()))
-					.type("string");
-		} else if (parameterName.startsWith(METHOD_REQUEST_HEADER)) {
-			parameter = new HeaderParameter()
-					.name(parameterName.substring(METHOD_REQUEST_HEADER.length()))
-					.type("string");
-		} else {
-			throw new UnsupportedOperationException("Unsupported request parameter type " + parameterName);
+	private static void unchecked(VoidStep step) {
+		try {
+			step.run();
+		} catch (IOException e) {
+			throw new CompletionException(e);
 		}
-		parameter.setRequired(parameterEntry.getValue());
-		return parameter;
 	}
 
-	private static String getBasePath(RestApi restApi) {
-		String[] basePath = null;
-		for (Resources resources = restApi.getResources(); resources != null; resources = safeGetNext(resources)) {
-			for (Resource resource : resources.getItem()) {
-				Map<String, Method> resourceMethods = resource.getResourceMethods();
-				if (resourceMethods.isEmpty()) {
-					continue;
-				}
-				String[] resourcePath = resource.getPath().split("/");
-				if (basePath == null) {
-					basePath = resourcePath;
-				} else {
-					int i=0;
-					for (; i<basePath.length && i<resourcePath.length; i++) {
-						if (!basePath[i].equals(resourcePath[i])) {
-							break;
-						}
-					}
-					basePath = Arrays.copyOf(basePath, i);
-				}
+	/**
+	 * Waits for an export and rethrows its failure as it was thrown by the step that failed.
+	 */
+	private static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
 			}
-		}
-		StringBuilder sb = new StringBuilder();
-		for (String s : basePath) {
-			if (!s.isEmpty()) {
-				sb.append("/");
-				sb.append(s);
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
 			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
 		}
-		return sb.toString();
 	}
 
-	private static Map<String, io.swagger.models.Model> getDefinitions(RestApi restApi)
-			throws IOException, JsonParseException, JsonMappingException {
-		Map<String, io.swagger.models.Model> result = new HashMap<String, io.swagger.models.Model>();
-		for (Models models = restApi.getModels(); models != null; models = safeGetNext(models)) {
-			for (Model modelItem : models.getItem()) {
-				String content = modelItem.getSchema(); 
-				io.swagger.models.Model model = 
-						Json.mapper().readValue(content, io.swagger.models.Model.class);
-				if (model instanceof ModelImpl) {
-					((ModelImpl) model).setName(modelItem.getName());
-				}
-				model.setDescription(modelItem.getDescription());
-				result.put(modelItem.getName(), model);
-			}
-		}
-		return result;
+	private String getHost(ApiSnapshot snapshot) {
+		return snapshot.getId() + ".execute-api." + region + ".amazonaws.com";
 	}
 
-	@SuppressWarnings("rawtypes")
-	private static void putIfNotNullOrEmpty(Map<String, Object> map, String key, Object value) {
-		if (value == null) {
-			return;
-		}
-		if (value instanceof Collection && ((Collection) value).isEmpty()) {
-			return;
+	/**
+	 * One reader per exporter, so that an endpoint without embedding support is only probed once.
+	 */
+	private synchronized EmbeddedHalReader getEmbeddedReader() {
+		if (!embedded) {
+			return null;
 		}
-		if (value instanceof Map) {
-			if (((Map) value).isEmpty()) {
-				return;
-			}
-			Map<String, Object> copy = new HashMap<String, Object>();
-			//Workaround for com.amazonaws.hal.client.ConvertingMap with null values
-			for (Object mapKey : ((Map) value).keySet()) {
-				Object mapValue = ((Map) value).get(mapKey);
-				if (mapValue == null) {
-					mapValue = "";
-				}
-				copy.put(mapKey.toString(), mapValue);
-			}
-			value = copy;
+		if (embeddedReader == null) {
+			embeddedReader = new EmbeddedHalReader(endpoint, region, credsProvider);
+			embeddedReader.setClientConfiguration(clientConfiguration);
+			embeddedReader.setMetrics(metrics);
+			embeddedReader.setLimiter(getLimiter());
 		}
-		map.put(key, value);
+		embeddedReader.setHedger(hedger);
+		return embeddedReader;
 	}
 
-	private static void processModelRefs(Collection<? extends io.swagger.models.Model> models, Map<String, Integer> modelRefCount) {
-		if (models != null) {
-			for (io.swagger.models.Model model : models) {
-				processModelRefs(model, modelRefCount);
-			}
+	private void recordPhase(String phase, long start) {
+		if (metrics != null) {
+			metrics.recordPhase(phase, start);
 		}
 	}
-	
-	private static void processModelRefs(io.swagger.models.Model model, Map<String, Integer> modelRefCount) {
-		if (model instanceof RefModel) {
-			String ref = ((RefModel) model).getSimpleRef();
-			Integer count = modelRefCount.get(ref);
-			modelRefCount.put(ref, count != null ? (count + 1) : 1);
-		} else if (model instanceof ModelImpl) {
-			processPropertyModelRefs(((ModelImpl) model).getProperties(), modelRefCount);
-			processPropertyModelRefs(((ModelImpl) model).getAdditionalProperties(), modelRefCount);
-		} else if (model instanceof ArrayModel) {
-			processPropertyModelRefs(((ArrayModel) model).getProperties(), modelRefCount);
-			processPropertyModelRefs(((ArrayModel) model).getItems(), modelRefCount);
-		} else if (model instanceof ComposedModel) {
-			processPropertyModelRefs(((ComposedModel) model).getProperties(), modelRefCount);
-			processModelRefs(((ComposedModel) model).getChild(), modelRefCount);
-			processModelRefs(((ComposedModel) model).getParent(), modelRefCount);
-			processModelRefs(((ComposedModel) model).getAllOf(), modelRefCount);
-			processModelRefs(((ComposedModel) model).getInterfaces(), modelRefCount);
+
+	private void recordOutput(OutputFormat format, long start, ExportMetrics.CountingOutputStream counter) {
+		if (metrics != null) {
+			metrics.recordOutput(format.getName(), start, counter.getCount());
 		}
-		
 	}
 
-	private static void processPropertyModelRefs(Map<String, Property> properties, Map<String, Integer> modelRefCount) {
-		if (properties != null) {
-			for (Property property : properties.values()) {
-				processPropertyModelRefs(property, modelRefCount);
-			}
+	/**
+	 * The API Gateway client and its connection pool are created once and shared by all exports of this instance,
+	 * unless the client was passed to the constructor.
+	 */
+	private synchronized ApiGateway getApiGateway() {
+		if (apiGateway == null) {
+			apiGateway = new AmazonApiGateway(endpoint).with(credsProvider).with(clientConfiguration).getApiGateway();
 		}
+		return apiGateway;
 	}
-	
-	private static void processPropertyModelRefs(Property property, Map<String, Integer> modelRefCount) {
-		if (property instanceof RefProperty) {
-			String ref = ((RefProperty) property).getSimpleRef();
-			Integer count = modelRefCount.get(ref);
-			modelRefCount.put(ref, count != null ? (count + 1) : 1);
-		} else if (property instanceof ArrayProperty) {
-			processPropertyModelRefs(((ArrayProperty) property).getItems(), modelRefCount);
-		} else if (property instanceof MapProperty) {
-			processPropertyModelRefs(((MapProperty) property).getAdditionalProperties(), modelRefCount);
+
+	private static RestApis safeGetNext(RestApis restApis) {
+		try {
+			return restApis.getNext();
+		} catch (UnsupportedOperationException e) {
+			return null;
 		}
 	}
 
-	private static String getEndpoint(String region) {
-        return String.format("https://apigateway.%s.amazonaws.com", region);
-    }
+	static String getEndpoint(String region) {
+		return String.format("https://apigateway.%s.amazonaws.com", region);
+	}
 }
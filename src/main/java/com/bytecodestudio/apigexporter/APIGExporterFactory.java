@@ -0,0 +1,109 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.apigateway.AmazonApiGateway;
+import com.amazonaws.services.apigateway.model.ApiGateway;
+
+/**
+ * Creates exporters that share one API Gateway client, with its connection pool, per endpoint,
+ * and one set of credentials, which are resolved once and cached by a {@link CachingCredentialsProvider}.
+ * Concurrent exports in one process, such as batch exports or the export service, reuse connections
+ * instead of opening a pool per exporter.
+ * <p>
+ * The pool is sized for the maximum request concurrency of {@link AdaptiveLimiter}, keeps connections
+ * alive between exports and closes connections that have been idle for longer than the idle timeout.
+ */
+public class APIGExporterFactory implements ExportServer.ExporterFactory {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = AdaptiveLimiter.DEFAULT_MAX_LIMIT;
+	public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30 * 1000;
+	public static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 10 * 1000;
+	public static final long DEFAULT_CONNECTION_MAX_IDLE_MILLIS = 60 * 1000L;
+
+	private final AWSCredentialsProvider credsProvider;
+	private final Map<String, ApiGateway> clients = new HashMap<String, ApiGateway>();
+	private String endpoint;
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private int socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+	private int connectionTimeoutMillis = DEFAULT_CONNECTION_TIMEOUT_MILLIS;
+	private long connectionMaxIdleMillis = DEFAULT_CONNECTION_MAX_IDLE_MILLIS;
+
+	/**
+	 * @param credsProvider wrapped in a {@link CachingCredentialsProvider} unless it already is one
+	 */
+	public APIGExporterFactory(AWSCredentialsProvider credsProvider) {
+		this.credsProvider = credsProvider instanceof CachingCredentialsProvider
+				? credsProvider : new CachingCredentialsProvider(credsProvider);
+	}
+
+	/**
+	 * Sets the API Gateway endpoint of all regions, for example a local stub server.
+	 * By default each region uses its own endpoint.
+	 */
+	public void setEndpoint(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	/**
+	 * Sets the size of the connection pool of each client, at least the number of requests in flight.
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+		this.socketTimeoutMillis = socketTimeoutMillis;
+	}
+
+	public void setConnectionTimeoutMillis(int connectionTimeoutMillis) {
+		this.connectionTimeoutMillis = connectionTimeoutMillis;
+	}
+
+	/**
+	 * Pooled connections idle for longer are closed, before the server closes them on its side.
+	 */
+	public void setConnectionMaxIdleMillis(long connectionMaxIdleMillis) {
+		this.connectionMaxIdleMillis = connectionMaxIdleMillis;
+	}
+
+	public AWSCredentialsProvider getCredentialsProvider() {
+		return credsProvider;
+	}
+
+	/**
+	 * Creates an exporter for the region. Exporters of the same endpoint share the client and its connections,
+	 * all other settings are per exporter.
+	 */
+	@Override
+	public APIGExporter create(String region) {
+		String regionEndpoint = endpoint != null ? endpoint : APIGExporter.getEndpoint(region);
+		APIGExporter exporter = new APIGExporter(getClient(regionEndpoint), credsProvider, region, regionEndpoint);
+		//The same settings as the shared client, for the requests that do not go through it
+		exporter.setClientConfiguration(getClientConfiguration());
+		return exporter;
+	}
+
+	private synchronized ApiGateway getClient(String endpoint) {
+		ApiGateway client = clients.get(endpoint);
+		if (client == null) {
+			client = new AmazonApiGateway(endpoint).with(credsProvider).with(getClientConfiguration()).getApiGateway();
+			clients.put(endpoint, client);
+		}
+		return client;
+	}
+
+	ClientConfiguration getClientConfiguration() {
+		return new ClientConfiguration()
+				.withUserAgent(APIGExporter.USER_AGENT)
+				.withMaxConnections(maxConnections)
+				.withSocketTimeout(socketTimeoutMillis)
+				.withConnectionTimeout(connectionTimeoutMillis)
+				.withTcpKeepAlive(true)
+				.withReaper(true)
+				.withConnectionMaxIdleMillis(connectionMaxIdleMillis);
+	}
+}
@@ -1,6 +1,11 @@
 package com.bytecodestudio.apigexporter;
 
-import java.io.FileWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -11,6 +16,8 @@ import com.amazonaws.auth.EnvironmentVariableCredentialsProvider;
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
 import com.beust.jcommander.JCommander;
 
+import io.swagger.models.Swagger;
+
 public class APIGExporterMain {
 
     private static final String CMD_NAME = "aws-api-export";
@@ -19,18 +26,131 @@ public class APIGExporterMain {
     @com.beust.jcommander.Parameter(names = {"--api", "-a"}, description = "API ID to export")
     private String apiId;
 
+    @com.beust.jcommander.Parameter(names = "--apis", description = "Comma-separated API IDs or names to export in batch mode, prefixed with id: or name: where one could be taken for the other")
+    private List<String> apiIds;
+
+    @com.beust.jcommander.Parameter(names = "--all", description = "Export all APIs in the region in batch mode")
+    private boolean allApis;
+
+    @com.beust.jcommander.Parameter(names = "--serve", description = "Run as a long-running HTTP export service: GET /apis/{id}?format=yaml&region=...")
+    private boolean serve;
+
+    @com.beust.jcommander.Parameter(names = "--port", description = "Port of the export service")
+    private int port = ExportServer.DEFAULT_PORT;
+
+    @com.beust.jcommander.Parameter(names = "--server-threads", description = "Number of requests the export service handles in parallel")
+    private int serverThreads = ExportServer.DEFAULT_THREADS;
+
+    @com.beust.jcommander.Parameter(names = "--doc-cache-ttl", description = "Time to live of documents cached by the export service in seconds")
+    private long docCacheTtl = DocumentCache.DEFAULT_TTL_MILLIS / 1000;
+
+    @com.beust.jcommander.Parameter(names = "--doc-cache-max-mb", description = "Maximum size of documents cached by the export service in megabytes")
+    private long docCacheMaxMb = DocumentCache.DEFAULT_MAX_BYTES / (1024 * 1024);
+
+    @com.beust.jcommander.Parameter(names = "--output-dir", description = "Output directory for batch mode, one file per API plus " + BatchExporter.MANIFEST_FILE)
+    private String outputDir;
+
+    @com.beust.jcommander.Parameter(names = "--batch-concurrency", description = "Number of APIs exported in parallel in batch mode")
+    private int batchConcurrency = 4;
+
     @com.beust.jcommander.Parameter(names = {"--region", "-r"}, description = "AWS Region")
     private String region = getRegionFromEnvironmentVariable();
 
-    @com.beust.jcommander.Parameter(names = {"--format", "-f"}, description = "Swagger file format: yaml or json")
+    @com.beust.jcommander.Parameter(names = "--regions", description = "Comma-separated AWS Regions to export --apis or --all from concurrently, into one subdirectory of --output-dir per region")
+    private List<String> regions;
+
+    @com.beust.jcommander.Parameter(names = "--endpoint", description = "API Gateway endpoint, defaults to the endpoint of the region")
+    private String endpoint;
+
+    @com.beust.jcommander.Parameter(names = {"--format", "-f"}, description = "Comma-separated Swagger file formats: yaml, json, min.json (compact), smile or cbor (binary JSON), each optionally compressed with a .gz or .zst suffix, e.g. min.json.zst")
     private String format = "yaml";
 
+    private List<OutputFormat> outputFormats = new ArrayList<OutputFormat>();
+
     @com.beust.jcommander.Parameter(names = {"--profile", "-p"}, description = "AWS CLI profile to use")
     private String profile = "default";
 
     @com.beust.jcommander.Parameter(names = {"--output", "-o"}, description = "Output file, prints to console if no file specified")
     private String file;
 
+    @com.beust.jcommander.Parameter(names = "--paths", description = "Comma-separated resource path patterns to export, for example /v2/orders/**; patterns starting with ! exclude paths")
+    private List<String> paths;
+
+    @com.beust.jcommander.Parameter(names = "--snapshot-out", description = "Also write everything fetched from API Gateway to this snapshot file, which --snapshot-in exports without calling AWS")
+    private String snapshotOut;
+
+    @com.beust.jcommander.Parameter(names = "--snapshot-in", description = "Export from a snapshot file written with --snapshot-out instead of calling API Gateway")
+    private String snapshotIn;
+
+    @com.beust.jcommander.Parameter(names = "--no-inline", description = "Reference request and response models as definitions instead of inlining models that no other model references")
+    private boolean noInline;
+
+    @com.beust.jcommander.Parameter(names = "--canonical", description = "Sort paths, definitions, responses and extension maps, so that exports of an unchanged API are identical")
+    private boolean canonical;
+
+    @com.beust.jcommander.Parameter(names = "--streaming", description = "Fetch and write the API one resource at a time instead of holding the whole API and document in memory, for very large APIs")
+    private boolean streaming;
+
+    @com.beust.jcommander.Parameter(names = {"--concurrency", "-c"}, description = "Number of parallel API Gateway requests")
+    private int concurrency = APIGExporter.DEFAULT_CONCURRENCY;
+
+    @com.beust.jcommander.Parameter(names = "--virtual-threads", description = "Run API Gateway requests on virtual threads (JDK 21+)")
+    private boolean virtualThreads;
+
+    @com.beust.jcommander.Parameter(names = "--max-connections", description = "Size of the API Gateway connection pool")
+    private int maxConnections = APIGExporterFactory.DEFAULT_MAX_CONNECTIONS;
+
+    @com.beust.jcommander.Parameter(names = "--socket-timeout", description = "API Gateway socket timeout in milliseconds")
+    private int socketTimeout = APIGExporterFactory.DEFAULT_SOCKET_TIMEOUT_MILLIS;
+
+    @com.beust.jcommander.Parameter(names = "--connect-timeout", description = "API Gateway connection timeout in milliseconds")
+    private int connectTimeout = APIGExporterFactory.DEFAULT_CONNECTION_TIMEOUT_MILLIS;
+
+    @com.beust.jcommander.Parameter(names = "--connection-max-idle", description = "Pooled connections idle for longer are closed, in seconds")
+    private long connectionMaxIdle = APIGExporterFactory.DEFAULT_CONNECTION_MAX_IDLE_MILLIS / 1000;
+
+    @com.beust.jcommander.Parameter(names = "--hedge", description = "Send a duplicate of embedded API Gateway page requests that are slower than most recent requests and use the first response")
+    private boolean hedge;
+
+    @com.beust.jcommander.Parameter(names = "--hedge-percentile", description = "Latency percentile of recent requests after which a request is hedged")
+    private double hedgePercentile = RequestHedger.DEFAULT_PERCENTILE;
+
+    @com.beust.jcommander.Parameter(names = "--hedge-budget", description = "Maximum percentage of requests that are hedged")
+    private double hedgeBudget = RequestHedger.DEFAULT_MAX_HEDGE_RATIO * 100;
+
+    private final List<RequestHedger> hedgers = new ArrayList<RequestHedger>();
+
+    @com.beust.jcommander.Parameter(names = "--no-embed", description = "Follow HAL links one by one instead of reading resources with embedded methods and integrations")
+    private boolean noEmbed;
+
+    private APIGExporterFactory exporterFactory;
+
+    @com.beust.jcommander.Parameter(names = "--skip-unchanged", description = "Skip APIs without new deployments or resource list changes since the previous export to files; changes that were not deployed are not detected")
+    private boolean skipUnchanged;
+
+    @com.beust.jcommander.Parameter(names = "--force", description = "Export even if --skip-unchanged finds the API unchanged, and ignore the local response cache")
+    private boolean force;
+
+    @com.beust.jcommander.Parameter(names = "--cache", description = "Cache fetched API Gateway responses on disk and reuse them for --cache-ttl seconds, so exports may be that old")
+    private boolean cache;
+
+    @com.beust.jcommander.Parameter(names = "--cache-dir", description = "Directory of the local response cache")
+    private String cacheDir = HalResponseCache.getDefaultDirectory().getPath();
+
+    @com.beust.jcommander.Parameter(names = "--cache-ttl", description = "Time to live of cached responses in seconds")
+    private long cacheTtl = HalResponseCache.DEFAULT_TTL_MILLIS / 1000;
+
+    @com.beust.jcommander.Parameter(names = "--cache-max-mb", description = "Maximum size of the local response cache in megabytes")
+    private long cacheMaxMb = HalResponseCache.DEFAULT_MAX_BYTES / (1024 * 1024);
+
+    @com.beust.jcommander.Parameter(names = "--metrics", description = "Write phase timings and API Gateway request statistics as JSON to this file")
+    private String metricsFile;
+
+    @com.beust.jcommander.Parameter(names = "--trace", description = "Write a timeline of all phases and API Gateway requests as Chrome trace-event JSON to this file")
+    private String traceFile;
+
+    private ExportMetrics metrics;
+
     @com.beust.jcommander.Parameter(names = "--help", help = true)
     private boolean help;
 
@@ -52,6 +172,21 @@ public class APIGExporterMain {
             System.exit(1);
         }
 
+        if (metricsFile != null || traceFile != null) {
+            metrics = new ExportMetrics();
+        }
+        if (traceFile != null) {
+            metrics.setTrace(new ExportTrace());
+        }
+        if (snapshotIn != null) {
+        	boolean success = exportFromSnapshot();
+        	writeMetrics();
+        	if (!success) {
+        		System.exit(1);
+        	}
+        	return;
+        }
+        long start = ExportMetrics.start();
         AWSCredentialsProvider provider = getEnvironmentVariableCredentialsProvider();
         if (provider == null || region == null) {
             AwsConfig config = new AwsConfig(profile);
@@ -68,31 +203,404 @@ public class APIGExporterMain {
                 System.exit(1);
             }
         }
+        if (metrics != null) {
+            metrics.recordPhase(ExportMetrics.PHASE_CREDENTIALS, start);
+        }
+        
+        exporterFactory = createExporterFactory(provider);
+        if (serve) {
+        	startServer();
+        	return;
+        }
         
+        boolean success;
         try {
-    		APIGExporter exporter = new APIGExporter(provider, region);
-    		String result = exporter.export(apiId, format);
-    		if (file != null) {
-    			FileWriter w = new FileWriter(file);
-    			w.write(result);
-    			w.close();
+    		if (regions != null) {
+    			success = exportRegions();
     		} else {
-    			LOG.info(result);
+    			success = export(createExporter(region));
     		}
         } catch (Throwable t) {
             LOG.error("Error exporting API in Swagger format", t);
+            success = false;
+        }
+        logHedging();
+        writeMetrics();
+        if (!success) {
             System.exit(1);
         }
     }
 
+    /**
+     * @return false if any API failed to export
+     */
+    private boolean export(APIGExporter exporter) throws Exception {
+    	if (isBatch()) {
+    		return exportBatch(exporter);
+    	}
+    	if (file != null) {
+    		exportToFiles(exporter);
+    		return true;
+    	}
+    	if (streaming && snapshotOut == null) {
+    		exporter.exportStreaming(apiId, force, outputFormats.subList(0, 1), Collections.<OutputStream>singletonList(System.out));
+    		return true;
+    	}
+    	ApiSnapshot snapshot = exporter.fetchSnapshot(apiId, force);
+    	writeSnapshot(snapshot);
+    	if (streaming) {
+    		exporter.write(snapshot, outputFormats.get(0), System.out);
+    	} else {
+    		exporter.write(exporter.transform(snapshot), outputFormats.get(0), System.out);
+    	}
+    	return true;
+    }
+
+    /**
+     * @return false if any region or API failed to export
+     */
+    private boolean exportRegions() throws Exception {
+    	MultiRegionExporter multiRegionExporter = new MultiRegionExporter(new ExportServer.ExporterFactory() {
+    		@Override
+    		public APIGExporter create(String region) {
+    			return createExporter(region);
+    		}
+    	}, batchConcurrency);
+    	multiRegionExporter.setSkipUnchanged(skipUnchanged && !force);
+    	multiRegionExporter.setRefresh(force);
+    	multiRegionExporter.setStreaming(streaming);
+    	List<MultiRegionExporter.RegionResult> results = multiRegionExporter.export(regions, allApis ? null : apiIds, outputFormats, new File(outputDir));
+    	boolean success = true;
+    	for (MultiRegionExporter.RegionResult result : results) {
+    		success &= result.isSuccess();
+    	}
+    	LOG.info("Exported " + results.size() + " regions to " + outputDir + (success ? "" : ", with failures, see " + MultiRegionExporter.MANIFEST_FILE));
+    	return success;
+    }
+
+    private void logHedging() {
+    	long requests = 0;
+    	long hedges = 0;
+    	long wins = 0;
+    	long skipped = 0;
+    	synchronized (hedgers) {
+    		if (hedgers.isEmpty()) {
+    			return;
+    		}
+    		for (RequestHedger hedger : hedgers) {
+    			requests += hedger.getRequestCount();
+    			hedges += hedger.getHedgeCount();
+    			wins += hedger.getWinCount();
+    			skipped += hedger.getSkipCount();
+    		}
+    	}
+    	LOG.info("Hedged " + hedges + " of " + requests + " API Gateway requests, "
+    			+ wins + " hedges responded first, " + skipped + " slow requests were not hedged within the budget");
+    }
+
+    private APIGExporterFactory createExporterFactory(AWSCredentialsProvider provider) {
+		APIGExporterFactory factory = new APIGExporterFactory(provider);
+		factory.setEndpoint(endpoint);
+		factory.setMaxConnections(maxConnections);
+		factory.setSocketTimeoutMillis(socketTimeout);
+		factory.setConnectionTimeoutMillis(connectTimeout);
+		factory.setConnectionMaxIdleMillis(connectionMaxIdle * 1000);
+		return factory;
+    }
+
+    private APIGExporter createExporter(String region) {
+		APIGExporter exporter = exporterFactory.create(region);
+		exporter.setConcurrency(concurrency);
+		exporter.setVirtualThreads(virtualThreads);
+		exporter.setMetrics(metrics);
+		exporter.setEmbedded(!noEmbed);
+		if (hedge) {
+			//Per region, since latencies differ between regions
+			RequestHedger hedger = new RequestHedger(hedgePercentile, hedgeBudget / 100, RequestHedger.DEFAULT_MIN_DELAY_MILLIS);
+			synchronized (hedgers) {
+				hedgers.add(hedger);
+			}
+			exporter.setHedger(hedger);
+		}
+		exporter.setInlineSchemas(!noInline);
+		exporter.setCanonical(canonical);
+		if (paths != null) {
+			exporter.setPathFilter(PathFilter.parse(paths));
+		}
+		if (cache) {
+			exporter.setResponseCache(new HalResponseCache(new File(cacheDir), cacheTtl * 1000, cacheMaxMb * 1024 * 1024));
+		}
+		return exporter;
+    }
+
+    /**
+     * Runs until the process is stopped, with one exporter per requested region.
+     */
+    private void startServer() {
+    	try {
+    		final ExportServer server = new ExportServer(port, serverThreads, new ExportServer.ExporterFactory() {
+    			@Override
+    			public APIGExporter create(String region) {
+    				return createExporter(region);
+    			}
+    		}, region, new DocumentCache(docCacheTtl * 1000, docCacheMaxMb * 1024 * 1024));
+    		server.setMetrics(metrics);
+    		server.start();
+    		Runtime.getRuntime().addShutdownHook(new Thread() {
+    			@Override
+    			public void run() {
+    				server.stop();
+    			}
+    		});
+    		LOG.info("Export service listening at " + server.getEndpoint() + ", GET /apis/{id}?format=yaml&region=" + region);
+    	} catch (Throwable t) {
+    		LOG.error("Could not start the export service", t);
+    		System.exit(1);
+    	}
+    }
+
+    private void writeMetrics() {
+    	if (metricsFile != null) {
+    		try {
+    			metrics.write(new File(metricsFile));
+    		} catch (Exception e) {
+    			LOG.error("Could not write metrics to " + metricsFile, e);
+    		}
+    	}
+    	if (traceFile != null) {
+    		ExportTrace trace = metrics.getTrace();
+    		try {
+    			trace.write(new File(traceFile));
+    			LOG.info("Wrote " + trace.getEventCount() + " trace events to " + traceFile
+    					+ (trace.getDroppedCount() > 0 ? ", dropped " + trace.getDroppedCount() : ""));
+    		} catch (Exception e) {
+    			LOG.error("Could not write trace to " + traceFile, e);
+    		}
+    	}
+    }
+
+    /**
+     * Transforms the API of the snapshot file, with the region it was fetched from and without credentials.
+     * 
+     * @return false if the export failed
+     */
+    private boolean exportFromSnapshot() {
+    	try {
+    		long start = ExportMetrics.start();
+    		ApiSnapshotFile snapshotFile = ApiSnapshotFile.read(new File(snapshotIn));
+    		if (metrics != null) {
+    			metrics.recordPhase(ExportMetrics.PHASE_SNAPSHOT_READ, start);
+    		}
+    		String snapshotRegion = snapshotFile.getRegion() != null ? snapshotFile.getRegion() : region;
+    		if (snapshotRegion == null) {
+    			LOG.error("Snapshot " + snapshotIn + " has no region, please specify --region");
+    			return false;
+    		}
+    		APIGExporter exporter = new APIGExporter((AWSCredentialsProvider) null, snapshotRegion);
+    		exporter.setConcurrency(concurrency);
+    		exporter.setMetrics(metrics);
+    		exporter.setInlineSchemas(!noInline);
+    		exporter.setCanonical(canonical);
+    		ApiSnapshot snapshot = snapshotFile.getSnapshot();
+    		if (file == null) {
+    			if (streaming) {
+    				exporter.write(snapshot, outputFormats.get(0), System.out);
+    			} else {
+    				exporter.write(exporter.transform(snapshot), outputFormats.get(0), System.out);
+    			}
+    		} else {
+    			writeFiles(exporter, snapshot);
+    		}
+    		return true;
+    	} catch (Throwable t) {
+    		LOG.error("Error exporting snapshot " + snapshotIn + " in Swagger format", t);
+    		return false;
+    	}
+    }
+
+    private void writeSnapshot(ApiSnapshot snapshot) throws Exception {
+    	if (snapshotOut == null) {
+    		return;
+    	}
+    	long start = ExportMetrics.start();
+    	ApiSnapshotFile.write(new File(snapshotOut), snapshot, region);
+    	if (metrics != null) {
+    		metrics.recordPhase(ExportMetrics.PHASE_SNAPSHOT_WRITE, start);
+    	}
+    }
+
+    private void exportToFiles(APIGExporter exporter) throws Exception {
+    	File fingerprintFile = new File(getOutputFile(outputFormats.get(0)).getPath() + ApiFingerprint.FILE_SUFFIX);
+    	String fingerprint = skipUnchanged && !force ? exporter.getFingerprint(apiId) : null;
+    	if (fingerprint != null && fingerprint.equals(ApiFingerprint.read(fingerprintFile)) && outputFilesExist()) {
+    		LOG.info("API " + apiId + " has no new deployment since the previous export, use --force to export anyway");
+    		return;
+    	}
+    	//A changed fingerprint means that cached responses are outdated
+    	boolean refresh = force || fingerprint != null;
+    	if (streaming && snapshotOut == null) {
+    		writeFiles(exporter, refresh);
+    	} else {
+    		ApiSnapshot snapshot = exporter.fetchSnapshot(apiId, refresh);
+    		writeSnapshot(snapshot);
+    		writeFiles(exporter, snapshot);
+    	}
+    	if (fingerprint != null) {
+    		ApiFingerprint.write(fingerprintFile, fingerprint);
+    	}
+    }
+
+    /**
+     * Files whose content is unchanged are not rewritten, see {@link ContentHash}.
+     */
+    private void writeFiles(final APIGExporter exporter, final ApiSnapshot snapshot) throws Exception {
+    	final Swagger swagger = streaming ? null : exporter.transform(snapshot);
+    	for (final OutputFormat outputFormat : outputFormats) {
+    		File outputFile = getOutputFile(outputFormat);
+    		boolean written = ContentHash.writeIfChanged(outputFile, new ContentHash.Content() {
+    			@Override
+    			public void write(OutputStream out) throws IOException {
+    				if (swagger != null) {
+    					exporter.write(swagger, outputFormat, out);
+    				} else {
+    					exporter.write(snapshot, outputFormat, out);
+    				}
+    			}
+    		});
+    		if (!written) {
+    			LOG.info(outputFile + " is unchanged, not rewritten");
+    		}
+    	}
+    }
+
+    /**
+     * Fetches and writes the resources one after the other, in all formats at once.
+     */
+    private void writeFiles(final APIGExporter exporter, final boolean refresh) throws Exception {
+    	List<File> outputFiles = new ArrayList<File>();
+    	for (OutputFormat outputFormat : outputFormats) {
+    		outputFiles.add(getOutputFile(outputFormat));
+    	}
+    	List<Boolean> written = ContentHash.writeIfChanged(outputFiles, new ContentHash.Contents() {
+    		@Override
+    		public void write(List<OutputStream> outs) throws IOException {
+    			exporter.exportStreaming(apiId, refresh, outputFormats, outs);
+    		}
+    	});
+    	for (int i = 0; i < outputFiles.size(); i++) {
+    		if (!written.get(i)) {
+    			LOG.info(outputFiles.get(i) + " is unchanged, not rewritten");
+    		}
+    	}
+    }
+
+    private boolean outputFilesExist() {
+    	if (snapshotOut != null && !new File(snapshotOut).isFile()) {
+    		return false;
+    	}
+    	for (OutputFormat outputFormat : outputFormats) {
+    		if (!getOutputFile(outputFormat).isFile()) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+    /**
+     * @return false if any API failed to export
+     */
+    private boolean exportBatch(APIGExporter exporter) throws Exception {
+    	List<String> ids = allApis ? exporter.getRestApiIds() : exporter.resolveRestApiIds(apiIds);
+    	BatchExporter batchExporter = new BatchExporter(exporter, batchConcurrency);
+    	batchExporter.setSkipUnchanged(skipUnchanged && !force);
+    	batchExporter.setRefresh(force);
+    	batchExporter.setStreaming(streaming);
+    	List<BatchExporter.Result> results = batchExporter.export(ids, outputFormats, new File(outputDir));
+    	int failed = 0;
+    	for (BatchExporter.Result result : results) {
+    		if (!result.isSuccess()) {
+    			failed++;
+    		}
+    	}
+    	LOG.info("Exported " + (results.size() - failed) + " of " + results.size() + " APIs to " + outputDir);
+    	return failed == 0;
+    }
+
+    /**
+     * With several formats, --output is a base name and each file gets the format extension.
+     */
+    private File getOutputFile(OutputFormat outputFormat) {
+    	if (outputFormats.size() == 1) {
+    		return new File(file);
+    	}
+    	//Longest matching extension, so that api.min.json is not taken for api.min plus json
+    	String extension = "";
+    	for (OutputFormat knownFormat : OutputFormat.values()) {
+    		if (file.endsWith("." + knownFormat.getName()) && knownFormat.getName().length() >= extension.length()) {
+    			extension = "." + knownFormat.getName();
+    		}
+    	}
+    	String baseName = file.substring(0, file.length() - extension.length());
+    	return new File(baseName + "." + outputFormat.getName());
+    }
+
+    private boolean isBatch() {
+    	return allApis || apiIds != null;
+    }
+
     private boolean validateArgs() {
-        if (apiId == null) {
+        int modes = (apiId != null ? 1 : 0) + (apiIds != null ? 1 : 0) + (allApis ? 1 : 0) + (serve ? 1 : 0)
+        		+ (snapshotIn != null ? 1 : 0);
+        if (modes != 1) {
+            return false;
+        }
+        if (snapshotOut != null && apiId == null) {
+            LOG.error("--snapshot-out is only supported with --api");
+            return false;
+        }
+        if (cache && serve) {
+            LOG.error("--cache is not supported with --serve, which caches generated documents in memory");
+            return false;
+        }
+        if (traceFile != null && serve) {
+            LOG.error("--trace is not supported with --serve");
+            return false;
+        }
+        if (regions != null && !isBatch()) {
+            LOG.error("--regions requires --apis or --all");
+            return false;
+        }
+        if (isBatch() && outputDir == null) {
+            LOG.error("--output-dir is required with --apis or --all");
+            return false;
+        }
+        if (batchConcurrency < 1) {
+            LOG.error("Batch concurrency must be at least 1");
             return false;
         }
-        if (!"yaml".equals(format) && !"json".equals(format)) {
-            LOG.error("Unsupported Swagger file format " + format);
+        for (String formatName : format.split(",")) {
+            OutputFormat outputFormat = OutputFormat.fromName(formatName.trim());
+            if (outputFormat == null) {
+                LOG.error("Unsupported Swagger file format " + formatName);
+                return false;
+            }
+            outputFormats.add(outputFormat);
+        }
+        if (!isBatch() && !serve && file == null && (outputFormats.size() > 1 || outputFormats.get(0).isBinary())) {
+            LOG.error("--output is required for several or binary formats");
+            return false;
+        }
+        if (concurrency < 1) {
+            LOG.error("Concurrency must be at least 1");
             return false;
         }
+        if (hedgePercentile <= 0 || hedgePercentile > 100 || hedgeBudget < 0) {
+            LOG.error("Hedge percentile must be between 0 and 100 and the hedge budget must not be negative");
+            return false;
+        }
+        if (maxConnections < concurrency) {
+            LOG.warn("--max-connections " + maxConnections + " is lower than --concurrency " + concurrency + ", requests will wait for connections");
+        }
 
         return true;
     }
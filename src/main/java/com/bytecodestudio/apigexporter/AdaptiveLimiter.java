@@ -0,0 +1,170 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonServiceException;
+
+/**
+ * Limits the number of HAL requests in flight and adapts the limit to API Gateway throttling (AIMD):
+ * every successful request raises the limit by 1/limit, up to the maximum, and a throttled request
+ * halves it. Throttled requests are retried after a jittered exponential backoff.
+ * <p>
+ * One limiter can be shared by all exports of a process, so that together they stay within
+ * the request rate of the account. Only requests that started after the last decrease can lower
+ * the limit again, so a burst of throttling responses halves it once.
+ */
+public class AdaptiveLimiter {
+
+	public static final int DEFAULT_MAX_LIMIT = 64;
+	public static final int DEFAULT_MAX_RETRIES = 8;
+	public static final long DEFAULT_BASE_BACKOFF_MILLIS = 100;
+	public static final long DEFAULT_MAX_BACKOFF_MILLIS = 20000;
+
+	private static final Log LOG = LogFactory.getLog(AdaptiveLimiter.class);
+	private static final int MIN_LIMIT = 1;
+
+	private final int maxLimit;
+	private final int maxRetries;
+	private final long baseBackoffMillis;
+	private final long maxBackoffMillis;
+	private final Random random = new Random();
+	private double limit;
+	private int inFlight;
+	private long lastDecreaseNanos = System.nanoTime();
+
+	public AdaptiveLimiter(int initialLimit, int maxLimit) {
+		this(initialLimit, maxLimit, DEFAULT_MAX_RETRIES, DEFAULT_BASE_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+	}
+
+	/**
+	 * @param maxRetries number of retries of a throttled request before the throttling error is rethrown
+	 * @param baseBackoffMillis backoff before the first retry, doubled for every further retry
+	 * @param maxBackoffMillis upper bound of the backoff
+	 */
+	public AdaptiveLimiter(int initialLimit, int maxLimit, int maxRetries, long baseBackoffMillis, long maxBackoffMillis) {
+		this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+		this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, this.maxLimit));
+		this.maxRetries = maxRetries;
+		this.baseBackoffMillis = baseBackoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	/**
+	 * A HAL request, or a traversal step that triggers requests through lazy HAL links.
+	 */
+	public interface Call<T> {
+		T call();
+	}
+
+	/**
+	 * Runs the call within the limit and retries it while it is throttled.
+	 *
+	 * @param linkType HAL link type for the retry count in the metrics
+	 * @param metrics may be null
+	 */
+	public <T> T execute(String linkType, ExportMetrics metrics, Call<T> call) {
+		return execute(linkType, metrics, 0, call);
+	}
+
+	/**
+	 * Runs the call within the limit, retries it while it is throttled, and also retries server errors (5xx)
+	 * with the same backoff, for requests that are not sent through the API Gateway client and its retry policy.
+	 * Server errors leave the limit unchanged.
+	 *
+	 * @param maxServerErrorRetries number of retries of server errors before the error is rethrown
+	 */
+	public <T> T execute(String linkType, ExportMetrics metrics, int maxServerErrorRetries, Call<T> call) {
+		int serverErrorRetries = 0;
+		for (int attempt = 0; ; attempt++) {
+			long start = acquire();
+			boolean succeeded = false;
+			boolean throttled = false;
+			try {
+				T result = call.call();
+				succeeded = true;
+				return result;
+			} catch (AmazonServiceException e) {
+				if (isThrottling(e) && attempt < maxRetries) {
+					throttled = true;
+					LOG.debug("Throttled fetching " + linkType + ", retry " + (attempt + 1) + " with limit " + getLimit());
+				} else if (isServerError(e) && serverErrorRetries < maxServerErrorRetries) {
+					serverErrorRetries++;
+					LOG.debug("Server error " + e.getStatusCode() + " fetching " + linkType + ", retry " + serverErrorRetries);
+				} else {
+					throw e;
+				}
+				if (metrics != null) {
+					metrics.recordRetry(linkType);
+				}
+			} finally {
+				release(start, succeeded, throttled);
+			}
+			backoff(attempt);
+		}
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	private synchronized long acquire() {
+		while (inFlight >= (int) limit) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting to send a request", e);
+			}
+		}
+		inFlight++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Other failures leave the limit unchanged.
+	 */
+	private synchronized void release(long start, boolean succeeded, boolean throttled) {
+		inFlight--;
+		if (succeeded) {
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		} else if (throttled && start - lastDecreaseNanos > 0) {
+			limit = Math.max(MIN_LIMIT, limit / 2);
+			lastDecreaseNanos = System.nanoTime();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Full jitter: a random time between zero and the exponential backoff of this attempt.
+	 */
+	private void backoff(int attempt) {
+		long backoff = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt, 30));
+		long sleepMillis = (long) (random.nextDouble() * backoff);
+		try {
+			TimeUnit.MILLISECONDS.sleep(sleepMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while backing off from throttling", e);
+		}
+	}
+
+	static boolean isServerError(AmazonServiceException e) {
+		return e.getStatusCode() >= 500;
+	}
+
+	static boolean isThrottling(AmazonServiceException e) {
+		String errorCode = e.getErrorCode();
+		return e.getStatusCode() == 429
+				|| "TooManyRequestsException".equals(errorCode)
+				|| "Throttling".equals(errorCode)
+				|| "ThrottlingException".equals(errorCode);
+	}
+}
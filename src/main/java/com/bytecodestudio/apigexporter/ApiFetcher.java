@@ -0,0 +1,737 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.apigateway.model.Integration;
+import com.amazonaws.services.apigateway.model.IntegrationResponse;
+import com.amazonaws.services.apigateway.model.Method;
+import com.amazonaws.services.apigateway.model.MethodResponse;
+import com.amazonaws.services.apigateway.model.Model;
+import com.amazonaws.services.apigateway.model.Models;
+import com.amazonaws.services.apigateway.model.Resource;
+import com.amazonaws.services.apigateway.model.Resources;
+import com.amazonaws.services.apigateway.model.RestApi;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Concurrent traversal engine for the HAL links of a {@link RestApi}.
+ * Every resource, method and integration is fetched as a separate task on the supplied executor.
+ * Worker tasks never wait for each other: they only submit follow-up tasks, and the calling thread
+ * assembles the results in the original HAL order, so the snapshot is identical to a sequential walk.
+ * <p>
+ * With a {@link HalResponseCache}, the API, its resource list, the methods of each resource and the models
+ * are looked up by HAL link URL before any request is made, and stored after they have been fetched.
+ * <p>
+ * With a {@link PathFilter}, resources that do not match are dropped from the resource list before
+ * their methods are requested, so they cost no requests beyond the resource list itself.
+ * <p>
+ * With an {@link EmbeddedHalReader}, resources are read with their methods and integrations embedded,
+ * in pages of the maximum size, and links are only followed if the endpoint does not support embedding.
+ * With a path filter, the resource list is read without methods, and each included resource is then read
+ * with its methods embedded, so excluded resources cost no requests beyond the resource list.
+ * <p>
+ * For streaming exports, {@link #fetchOutline(RestApi)} fetches the resources and their methods first,
+ * and {@link #newResourceLoader(int)} fetches the integrations of one resource after the other while
+ * the document is written. Integrations, with their templates, are most of an API, so the memory used
+ * is bounded by the methods of the API and the integrations of the resources in flight.
+ */
+public class ApiFetcher {
+
+	private static final int HTTP_OK = 200;
+	private static final TypeReference<ApiSnapshot> API_TYPE = new TypeReference<ApiSnapshot>() {};
+	private static final TypeReference<List<ApiSnapshot.Resource>> RESOURCES_TYPE = new TypeReference<List<ApiSnapshot.Resource>>() {};
+	private static final TypeReference<LinkedHashMap<String, ApiSnapshot.Method>> METHODS_TYPE = new TypeReference<LinkedHashMap<String, ApiSnapshot.Method>>() {};
+	private static final TypeReference<List<ApiSnapshot.Model>> MODELS_TYPE = new TypeReference<List<ApiSnapshot.Model>>() {};
+
+	private final ExecutorService executor;
+	private final HalResponseCache cache;
+	private final String apiUrl;
+	private final boolean refresh;
+	private ExportMetrics metrics;
+	private AdaptiveLimiter limiter;
+	private PathFilter pathFilter;
+	private EmbeddedHalReader embeddedReader;
+	private RestApi restApi;
+	private Map<String, Resource> resourcesById;
+	private Map<String, PendingResource> pendingResources;
+
+	public ApiFetcher(ExecutorService executor) {
+		this(executor, null, null, false);
+	}
+
+	/**
+	 * @param apiUrl URL of the REST API HAL resource, used as cache key prefix
+	 * @param refresh fetch everything and overwrite the cached responses
+	 */
+	public ApiFetcher(ExecutorService executor, HalResponseCache cache, String apiUrl, boolean refresh) {
+		this.executor = executor;
+		this.cache = cache;
+		this.apiUrl = apiUrl;
+		this.refresh = refresh;
+	}
+
+	/**
+	 * Sets the collector for HAL request statistics, null to disable metrics.
+	 */
+	public void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets the limiter that paces HAL requests and retries throttled ones, null to send requests unpaced.
+	 */
+	public void setLimiter(AdaptiveLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/**
+	 * Restricts the snapshot to the resources whose path matches the filter, null to fetch all resources.
+	 */
+	public void setPathFilter(PathFilter pathFilter) {
+		this.pathFilter = pathFilter;
+	}
+
+	/**
+	 * Sets the reader for resource and model pages with embedded methods and integrations, null to follow links.
+	 */
+	void setEmbeddedReader(EmbeddedHalReader embeddedReader) {
+		this.embeddedReader = embeddedReader;
+	}
+
+	/**
+	 * Creates a bounded worker pool for {@link ApiFetcher}.
+	 * Virtual threads are used when requested and supported by the running JDK (21+),
+	 * otherwise the pool falls back to platform daemon threads.
+	 */
+	public static ExecutorService newExecutor(int concurrency, boolean virtualThreads) {
+		ThreadFactory threadFactory = virtualThreads ? getVirtualThreadFactory() : null;
+		if (threadFactory == null) {
+			threadFactory = newThreadFactory("apig-exporter-");
+		}
+		return Executors.newFixedThreadPool(Math.max(1, concurrency), threadFactory);
+	}
+
+	/**
+	 * Creates daemon threads named with the prefix and a sequence number, which do not keep the JVM alive.
+	 */
+	static ThreadFactory newThreadFactory(final String namePrefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, namePrefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	private static ThreadFactory getVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			//Virtual threads are not available before JDK 21
+			return null;
+		}
+	}
+
+	public ApiSnapshot fetch(final RestApi restApi) throws IOException {
+		ApiSnapshot snapshot = fetchApi(restApi);
+		Future<List<ApiSnapshot.Model>> models = submitModels(restApi);
+
+		List<Future<PendingResource>> resources = new ArrayList<Future<PendingResource>>();
+		List<ApiSnapshot.Resource> listedResources = getCached(apiUrl + "/resources", RESOURCES_TYPE, ExportMetrics.LINK_RESOURCES);
+		List<ApiSnapshot.Resource> embeddedResources = null;
+		if (listedResources == null && embeddedReader != null) {
+			if (pathFilter == null) {
+				embeddedResources = embeddedReader.readResources(restApi.getId());
+			} else {
+				listedResources = embeddedReader.listResources(restApi.getId());
+				if (listedResources != null) {
+					putCached(apiUrl + "/resources", listedResources);
+				}
+			}
+		}
+		if (embeddedResources != null) {
+			List<ApiSnapshot.Resource> resourceList = new ArrayList<ApiSnapshot.Resource>();
+			for (ApiSnapshot.Resource resource : embeddedResources) {
+				resourceList.add(toListedResource(resource.getId(), resource.getPath()));
+				putCached(getMethodsUrl(resource.getId()), resource.getMethods());
+				if (isIncluded(resource.getPath())) {
+					snapshot.getResources().add(resource);
+				}
+			}
+			putCached(apiUrl + "/resources", resourceList);
+		} else {
+			listResources(listedResources, true, resources);
+		}
+
+		for (Future<PendingResource> resourceFuture : resources) {
+			snapshot.getResources().add(complete(await(resourceFuture)));
+		}
+		snapshot.setModels(await(models));
+		return snapshot;
+	}
+
+	/**
+	 * Fetches the API, its models, the included resources and their methods, but not the integrations:
+	 * the methods of the returned resources have no integration, and are enough to build the paths
+	 * and the global consumes and produces of the document. The integrations are then fetched resource
+	 * by resource with {@link #newResourceLoader(int)}, so only a few of them are held in memory at a time.
+	 * <p>
+	 * Resources are always listed link by link, as pages with embedded methods would hold the complete API.
+	 */
+	public ApiSnapshot fetchOutline(RestApi restApi) throws IOException {
+		ApiSnapshot snapshot = fetchApi(restApi);
+		Future<List<ApiSnapshot.Model>> models = submitModels(restApi);
+
+		List<Future<PendingResource>> resources = new ArrayList<Future<PendingResource>>();
+		listResources(getCached(apiUrl + "/resources", RESOURCES_TYPE, ExportMetrics.LINK_RESOURCES), false, resources);
+		pendingResources = new HashMap<String, PendingResource>();
+		for (Future<PendingResource> resourceFuture : resources) {
+			PendingResource pendingResource = await(resourceFuture);
+			ApiSnapshot.Resource resource = toListedResource(pendingResource.resource.getId(), pendingResource.resource.getPath());
+			if (pendingResource.cached) {
+				for (ApiSnapshot.Method method : pendingResource.resource.getMethods().values()) {
+					resource.getMethods().put(method.getHttpMethod(), withoutIntegration(method));
+				}
+				//Cached methods are read again when the resource is loaded
+				pendingResource.resource.setMethods(new LinkedHashMap<String, ApiSnapshot.Method>());
+			} else {
+				for (Map.Entry<String, Future<PendingMethod>> methodEntry : pendingResource.methods.entrySet()) {
+					resource.getMethods().put(methodEntry.getKey(), withoutIntegration(await(methodEntry.getValue()).method));
+				}
+			}
+			pendingResources.put(resource.getId(), pendingResource);
+			snapshot.getResources().add(resource);
+		}
+		snapshot.setModels(await(models));
+		return snapshot;
+	}
+
+	/**
+	 * Loads the resources of {@link #fetchOutline(RestApi)} with their methods and integrations. While a resource
+	 * is returned, the integrations of at most {@code window} following resources are being fetched, and a resource
+	 * is not referenced by the loader once it has been returned.
+	 */
+	public SwaggerTransformer.ResourceLoader newResourceLoader(final int window) {
+		return new SwaggerTransformer.ResourceLoader() {
+			@Override
+			public Iterator<ApiSnapshot.Resource> load(final List<ApiSnapshot.Resource> resources) {
+				return new Iterator<ApiSnapshot.Resource>() {
+					private final Deque<PendingResource> started = new ArrayDeque<PendingResource>();
+					private int next;
+
+					@Override
+					public boolean hasNext() {
+						return !started.isEmpty() || next < resources.size();
+					}
+
+					@Override
+					public ApiSnapshot.Resource next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						try {
+							while (started.size() < Math.max(1, window) && next < resources.size()) {
+								started.add(start(resources.get(next++).getId()));
+							}
+							return complete(started.poll());
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}
+				};
+			}
+		};
+	}
+
+	private ApiSnapshot fetchApi(RestApi restApi) {
+		this.restApi = restApi;
+		ApiSnapshot snapshot = getCached(apiUrl, API_TYPE, ExportMetrics.LINK_RESTAPI);
+		if (snapshot == null) {
+			snapshot = new ApiSnapshot();
+			snapshot.setId(restApi.getId());
+			snapshot.setName(restApi.getName());
+			snapshot.setDescription(restApi.getDescription());
+			putCached(apiUrl, snapshot);
+		}
+		return snapshot;
+	}
+
+	private Future<List<ApiSnapshot.Model>> submitModels(final RestApi restApi) {
+		return executor.submit(new Callable<List<ApiSnapshot.Model>>() {
+			@Override
+			public List<ApiSnapshot.Model> call() throws IOException {
+				List<ApiSnapshot.Model> result = getCached(apiUrl + "/models", MODELS_TYPE, ExportMetrics.LINK_MODELS);
+				if (result == null) {
+					result = embeddedReader != null ? embeddedReader.readModels(restApi.getId()) : null;
+					if (result == null) {
+						result = fetchModels(restApi);
+					}
+					putCached(apiUrl + "/models", result);
+				}
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Submits a task per included resource that fetches its methods, from a resource list that was cached
+	 * or read without methods, or by walking the resource pages.
+	 *
+	 * @param fetchIntegrations also submit the tasks that fetch the integrations, otherwise see {@link #start(String)}
+	 */
+	private void listResources(List<ApiSnapshot.Resource> listedResources, final boolean fetchIntegrations,
+			List<Future<PendingResource>> resources) {
+		if (listedResources != null) {
+			for (final ApiSnapshot.Resource resource : listedResources) {
+				if (!isIncluded(resource.getPath())) {
+					continue;
+				}
+				resources.add(executor.submit(new Callable<PendingResource>() {
+					@Override
+					public PendingResource call() throws IOException {
+						return fetchResource(resource.getId(), resource.getPath(), null, fetchIntegrations);
+					}
+				}));
+			}
+			return;
+		}
+		//The complete list is cached, so that exports with other filters can use it
+		List<ApiSnapshot.Resource> resourceList = new ArrayList<ApiSnapshot.Resource>();
+		long start = ExportMetrics.start();
+		for (Resources page = restApi.getResources(); page != null; page = getNext(page)) {
+			List<ApiSnapshot.Resource> pageResources = new ArrayList<ApiSnapshot.Resource>();
+			for (final Resource resource : getItems(page)) {
+				pageResources.add(toListedResource(resource.getId(), resource.getPath()));
+				if (!isIncluded(resource.getPath())) {
+					continue;
+				}
+				resources.add(executor.submit(new Callable<PendingResource>() {
+					@Override
+					public PendingResource call() throws IOException {
+						return fetchResource(resource.getId(), resource.getPath(), resource, fetchIntegrations);
+					}
+				}));
+			}
+			recordRequest(ExportMetrics.LINK_RESOURCES, start, pageResources, null, null);
+			resourceList.addAll(pageResources);
+			start = ExportMetrics.start();
+		}
+		putCached(apiUrl + "/resources", resourceList);
+	}
+
+	/**
+	 * @param resource the HAL resource, or null if the resource list came from the cache or the embedded reader
+	 */
+	private PendingResource fetchResource(String id, String path, Resource resource, boolean fetchIntegrations) throws IOException {
+		PendingResource result = new PendingResource();
+		result.resource.setId(id);
+		result.resource.setPath(path);
+		Map<String, ApiSnapshot.Method> cachedMethods = getCached(getMethodsUrl(id), METHODS_TYPE, ExportMetrics.LINK_METHODS);
+		if (cachedMethods != null) {
+			result.resource.setMethods(cachedMethods);
+			result.cached = true;
+			return result;
+		}
+		ApiSnapshot.Resource embeddedResource = fetchIntegrations && resource == null && embeddedReader != null
+				? embeddedReader.readResource(restApi.getId(), id) : null;
+		if (embeddedResource != null) {
+			result.resource.setMethods(embeddedResource.getMethods());
+			return result;
+		}
+		fetchMethods(result, getResourceMethods(resource != null ? resource : getResource(id), path), fetchIntegrations);
+		return result;
+	}
+
+	private Map<String, Method> getResourceMethods(final Resource halResource, String path) {
+		long start = ExportMetrics.start();
+		Map<String, Method> resourceMethods = execute(ExportMetrics.LINK_RESOURCES, new AdaptiveLimiter.Call<Map<String, Method>>() {
+			@Override
+			public Map<String, Method> call() {
+				return halResource.getResourceMethods();
+			}
+		});
+		//The methods are lazy HAL proxies, serializing them would follow their links, so only their names are measured
+		recordRequest(ExportMetrics.LINK_RESOURCES, start, resourceMethods != null ? resourceMethods.keySet() : null, path, null);
+		return resourceMethods;
+	}
+
+	/**
+	 * @param halMethods may be null for a resource without methods
+	 */
+	private void fetchMethods(PendingResource pendingResource, Map<String, Method> halMethods, final boolean fetchIntegration) {
+		if (halMethods != null) {
+			final String path = pendingResource.resource.getPath();
+			for (Map.Entry<String, Method> methodEntry : halMethods.entrySet()) {
+				final Method method = methodEntry.getValue();
+				pendingResource.methods.put(methodEntry.getKey(), executor.submit(new Callable<PendingMethod>() {
+					@Override
+					public PendingMethod call() {
+						return fetchMethod(method, path, fetchIntegration);
+					}
+				}));
+			}
+		}
+	}
+
+	/**
+	 * Starts fetching the integrations of a resource of the outline, on the calling thread.
+	 */
+	private PendingResource start(String id) throws IOException {
+		PendingResource pendingResource = pendingResources.remove(id);
+		if (pendingResource == null) {
+			throw new IllegalStateException("Resource " + id + " is not part of the outline or was already loaded");
+		}
+		if (pendingResource.cached) {
+			Map<String, ApiSnapshot.Method> cachedMethods = cache.get(getMethodsUrl(id), METHODS_TYPE);
+			if (cachedMethods != null) {
+				pendingResource.resource.setMethods(cachedMethods);
+				return pendingResource;
+			}
+			//Expired since the outline was fetched
+			pendingResource.cached = false;
+			fetchMethods(pendingResource, getResourceMethods(getResource(id), pendingResource.resource.getPath()), true);
+			return pendingResource;
+		}
+		for (Future<PendingMethod> methodFuture : pendingResource.methods.values()) {
+			submitIntegration(await(methodFuture), pendingResource.resource.getPath());
+		}
+		return pendingResource;
+	}
+
+	/**
+	 * Waits for the methods and integrations of a resource, in their original order, and caches them.
+	 */
+	private ApiSnapshot.Resource complete(PendingResource pendingResource) throws IOException {
+		for (Map.Entry<String, Future<PendingMethod>> methodEntry : pendingResource.methods.entrySet()) {
+			PendingMethod pendingMethod = await(methodEntry.getValue());
+			pendingMethod.method.setIntegration(await(pendingMethod.integration));
+			pendingResource.resource.getMethods().put(methodEntry.getKey(), pendingMethod.method);
+		}
+		if (!pendingResource.cached) {
+			putCached(getMethodsUrl(pendingResource.resource.getId()), pendingResource.resource.getMethods());
+		}
+		return pendingResource.resource;
+	}
+
+	/**
+	 * Looks up a HAL resource by id when the resource list was cached but its methods were not.
+	 * The resource list is fetched at most once per export.
+	 */
+	private synchronized Resource getResource(String id) {
+		if (resourcesById == null) {
+			resourcesById = new HashMap<String, Resource>();
+			long start = ExportMetrics.start();
+			for (Resources page = restApi.getResources(); page != null; page = getNext(page)) {
+				List<ApiSnapshot.Resource> pageResources = new ArrayList<ApiSnapshot.Resource>();
+				for (Resource resource : getItems(page)) {
+					resourcesById.put(resource.getId(), resource);
+					pageResources.add(toListedResource(resource.getId(), resource.getPath()));
+				}
+				recordRequest(ExportMetrics.LINK_RESOURCES, start, pageResources, null, null);
+				start = ExportMetrics.start();
+			}
+		}
+		Resource resource = resourcesById.get(id);
+		if (resource == null) {
+			throw new IllegalStateException("Resource " + id + " no longer exists, re-run the export without --cache");
+		}
+		return resource;
+	}
+
+	private boolean isIncluded(String path) {
+		return pathFilter == null || pathFilter.matches(path);
+	}
+
+	private String getMethodsUrl(String resourceId) {
+		return apiUrl + "/resources/" + resourceId + "/methods";
+	}
+
+	private <T> T getCached(String url, TypeReference<T> type, String linkType) {
+		T value = cache != null && !refresh ? cache.get(url, type) : null;
+		if (value != null && metrics != null) {
+			metrics.recordCacheHit(linkType);
+		}
+		return value;
+	}
+
+	/**
+	 * The HAL client does not expose the HTTP exchange, so a traced request is a traversal step
+	 * that succeeded, or failed with the status of the error.
+	 *
+	 * @param path resource path, null for a page of a list
+	 * @param httpMethod HTTP method of the API method, null for resources and models
+	 */
+	private void recordRequest(String linkType, long start, Object value, String path, String httpMethod) {
+		if (metrics != null) {
+			long serializedBytes = ExportMetrics.sizeOf(value);
+			metrics.recordRequest(linkType, start, -1, serializedBytes);
+			metrics.traceRequest(linkType, start, path, httpMethod, HTTP_OK, -1, serializedBytes);
+		}
+	}
+
+	private <T> T execute(String linkType, AdaptiveLimiter.Call<T> call) {
+		long start = ExportMetrics.start();
+		try {
+			return limiter != null ? limiter.execute(linkType, metrics, call) : call.call();
+		} catch (RuntimeException e) {
+			if (metrics != null) {
+				int status = e instanceof AmazonServiceException ? ((AmazonServiceException) e).getStatusCode() : 0;
+				metrics.traceRequest(linkType, start, null, null, status, -1);
+			}
+			throw e;
+		}
+	}
+
+	private List<Resource> getItems(final Resources page) {
+		return execute(ExportMetrics.LINK_RESOURCES, new AdaptiveLimiter.Call<List<Resource>>() {
+			@Override
+			public List<Resource> call() {
+				return page.getItem();
+			}
+		});
+	}
+
+	private Resources getNext(final Resources page) {
+		return execute(ExportMetrics.LINK_RESOURCES, new AdaptiveLimiter.Call<Resources>() {
+			@Override
+			public Resources call() {
+				return safeGetNext(page);
+			}
+		});
+	}
+
+	private Models getNext(final Models page) {
+		return execute(ExportMetrics.LINK_MODELS, new AdaptiveLimiter.Call<Models>() {
+			@Override
+			public Models call() {
+				return safeGetNext(page);
+			}
+		});
+	}
+
+	private static ApiSnapshot.Resource toListedResource(String id, String path) {
+		ApiSnapshot.Resource resource = new ApiSnapshot.Resource();
+		resource.setId(id);
+		resource.setPath(path);
+		return resource;
+	}
+
+	private void putCached(String url, Object value) {
+		if (cache != null) {
+			cache.put(url, value);
+		}
+	}
+
+	/**
+	 * @param fetchIntegration also submit the task that fetches the integration, otherwise see {@link #start(String)}
+	 */
+	private PendingMethod fetchMethod(final Method method, String path, boolean fetchIntegration) {
+		long start = ExportMetrics.start();
+		PendingMethod result = new PendingMethod();
+		result.halMethod = method;
+		result.method = execute(ExportMetrics.LINK_METHODS, new AdaptiveLimiter.Call<ApiSnapshot.Method>() {
+			@Override
+			public ApiSnapshot.Method call() {
+				return toSnapshot(method);
+			}
+		});
+		recordRequest(ExportMetrics.LINK_METHODS, start, result.method, path, result.method.getHttpMethod());
+		if (fetchIntegration) {
+			submitIntegration(result, path);
+		}
+		return result;
+	}
+
+	private void submitIntegration(PendingMethod pendingMethod, final String path) {
+		final Method method = pendingMethod.halMethod;
+		final String httpMethod = pendingMethod.method.getHttpMethod();
+		pendingMethod.integration = executor.submit(new Callable<ApiSnapshot.Integration>() {
+			@Override
+			public ApiSnapshot.Integration call() {
+				return fetchIntegration(method, path, httpMethod);
+			}
+		});
+	}
+
+	/**
+	 * A copy of the method that shares everything but the integration, for the outline.
+	 */
+	private static ApiSnapshot.Method withoutIntegration(ApiSnapshot.Method method) {
+		ApiSnapshot.Method result = new ApiSnapshot.Method();
+		result.setHttpMethod(method.getHttpMethod());
+		result.setAuthorizationType(method.getAuthorizationType());
+		result.setApiKeyRequired(method.getApiKeyRequired());
+		result.setRequestModels(method.getRequestModels());
+		result.setRequestParameters(method.getRequestParameters());
+		result.setMethodResponses(method.getMethodResponses());
+		return result;
+	}
+
+	private static ApiSnapshot.Method toSnapshot(Method method) {
+		ApiSnapshot.Method result = new ApiSnapshot.Method();
+		result.setHttpMethod(method.getHttpMethod());
+		result.setAuthorizationType(method.getAuthorizationType());
+		result.setApiKeyRequired(method.getApiKeyRequired());
+		result.setRequestModels(ApiSnapshot.copyOf(method.getRequestModels()));
+		result.setRequestParameters(ApiSnapshot.copyOf(method.getRequestParameters()));
+
+		Map<String, MethodResponse> methodResponses = method.getMethodResponses();
+		if (methodResponses != null) {
+			Map<String, ApiSnapshot.MethodResponse> responses = new LinkedHashMap<String, ApiSnapshot.MethodResponse>();
+			for (String key : methodResponses.keySet()) {
+				MethodResponse methodResponse = methodResponses.get(key);
+				ApiSnapshot.MethodResponse response = new ApiSnapshot.MethodResponse();
+				response.setStatusCode(methodResponse.getStatusCode());
+				response.setResponseParameters(ApiSnapshot.copyOf(methodResponse.getResponseParameters()));
+				response.setResponseModels(ApiSnapshot.copyOf(methodResponse.getResponseModels()));
+				responses.put(key, response);
+			}
+			result.setMethodResponses(responses);
+		}
+		return result;
+	}
+
+	private ApiSnapshot.Integration fetchIntegration(final Method method, String path, String httpMethod) {
+		long start = ExportMetrics.start();
+		ApiSnapshot.Integration result = execute(ExportMetrics.LINK_INTEGRATIONS, new AdaptiveLimiter.Call<ApiSnapshot.Integration>() {
+			@Override
+			public ApiSnapshot.Integration call() {
+				try {
+					Integration integration = method.getMethodIntegration();
+					return integration != null ? toSnapshot(integration) : null;
+				} catch (UnsupportedOperationException e) {
+					//Method without integration
+					return null;
+				}
+			}
+		});
+		recordRequest(ExportMetrics.LINK_INTEGRATIONS, start, result, path, httpMethod);
+		return result;
+	}
+
+	private static ApiSnapshot.Integration toSnapshot(Integration integration) {
+		ApiSnapshot.Integration result = new ApiSnapshot.Integration();
+		result.setType(integration.getType());
+		result.setUri(integration.getUri());
+		result.setHttpMethod(integration.getHttpMethod());
+		result.setCredentials(integration.getCredentials());
+		result.setCacheNamespace(integration.getCacheNamespace());
+		result.setCacheKeyParameters(integration.getCacheKeyParameters());
+		result.setRequestTemplates(ApiSnapshot.copyOf(integration.getRequestTemplates()));
+		result.setRequestParameters(ApiSnapshot.copyOf(integration.getRequestParameters()));
+
+		Map<String, IntegrationResponse> integrationResponses = integration.getIntegrationResponses();
+		if (integrationResponses != null) {
+			Map<String, ApiSnapshot.IntegrationResponse> responses = new LinkedHashMap<String, ApiSnapshot.IntegrationResponse>();
+			for (String key : integrationResponses.keySet()) {
+				IntegrationResponse integrationResponse = integrationResponses.get(key);
+				ApiSnapshot.IntegrationResponse response = new ApiSnapshot.IntegrationResponse();
+				response.setStatusCode(integrationResponse.getStatusCode());
+				response.setSelectionPattern(integrationResponse.getSelectionPattern());
+				response.setResponseParameters(ApiSnapshot.copyOf(integrationResponse.getResponseParameters()));
+				response.setResponseTemplates(ApiSnapshot.copyOf(integrationResponse.getResponseTemplates()));
+				responses.put(key, response);
+			}
+			result.setIntegrationResponses(responses);
+		}
+		return result;
+	}
+
+	private List<ApiSnapshot.Model> fetchModels(RestApi restApi) {
+		List<ApiSnapshot.Model> result = new ArrayList<ApiSnapshot.Model>();
+		long start = ExportMetrics.start();
+		for (Models models = restApi.getModels(); models != null; models = getNext(models)) {
+			final Models page = models;
+			List<ApiSnapshot.Model> pageModels = execute(ExportMetrics.LINK_MODELS, new AdaptiveLimiter.Call<List<ApiSnapshot.Model>>() {
+				@Override
+				public List<ApiSnapshot.Model> call() {
+					List<ApiSnapshot.Model> result = new ArrayList<ApiSnapshot.Model>();
+					for (Model modelItem : page.getItem()) {
+						ApiSnapshot.Model model = new ApiSnapshot.Model();
+						model.setName(modelItem.getName());
+						model.setDescription(modelItem.getDescription());
+						model.setSchema(modelItem.getSchema());
+						result.add(model);
+					}
+					return result;
+				}
+			});
+			recordRequest(ExportMetrics.LINK_MODELS, start, pageModels, null, null);
+			result.addAll(pageModels);
+			start = ExportMetrics.start();
+		}
+		return result;
+	}
+
+	static <T> T await(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while fetching API", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	static Resources safeGetNext(Resources resources) {
+		try {
+			return resources.getNext();
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	static Models safeGetNext(Models models) {
+		try {
+			return models.getNext();
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	private static class PendingResource {
+		private final ApiSnapshot.Resource resource = new ApiSnapshot.Resource();
+		private final Map<String, Future<PendingMethod>> methods = new LinkedHashMap<String, Future<PendingMethod>>();
+		private boolean cached;
+	}
+
+	private static class PendingMethod {
+		private Method halMethod;
+		private ApiSnapshot.Method method;
+		private Future<ApiSnapshot.Integration> integration;
+	}
+}
@@ -0,0 +1,116 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+import com.amazonaws.services.apigateway.model.Deployment;
+import com.amazonaws.services.apigateway.model.Deployments;
+import com.amazonaws.services.apigateway.model.Resource;
+import com.amazonaws.services.apigateway.model.Resources;
+import com.amazonaws.services.apigateway.model.RestApi;
+
+/**
+ * Cheap change detection for an API: a hash over the API metadata, the latest deployment
+ * and the resource list, which costs a few paged requests instead of a full traversal.
+ * Edits of methods, integrations, templates or models that were never deployed do not change the fingerprint,
+ * although an export reflects them, which is why skipping unchanged APIs is opt-in.
+ */
+public class ApiFingerprint {
+
+	public static final String FILE_SUFFIX = ".fingerprint";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private ApiFingerprint() {
+	}
+
+	public static String compute(RestApi restApi) {
+		return compute(restApi, new ExportOptions());
+	}
+
+	/**
+	 * @param options options of the export. The path filter, the inlining of schemas and canonical ordering
+	 * change the document written for the same API, so they are part of the fingerprint,
+	 * and changing one of them causes a new export. Streaming writes the same document.
+	 */
+	public static String compute(RestApi restApi, ExportOptions options) {
+		MessageDigest digest = newDigest();
+		if (options.getPathFilter() != null) {
+			update(digest, "paths", options.getPathFilter().toString());
+		}
+		update(digest, "inlineBodyParameterSchema", String.valueOf(options.isInlineBodyParameterSchema()));
+		update(digest, "inlineResponseSchema", String.valueOf(options.isInlineResponseSchema()));
+		update(digest, "canonical", String.valueOf(options.isCanonical()));
+		update(digest, "name", restApi.getName());
+		update(digest, "description", restApi.getDescription());
+		update(digest, "deployment", getLatestDeploymentId(restApi));
+		for (Resources resources = restApi.getResources(); resources != null; resources = ApiFetcher.safeGetNext(resources)) {
+			for (Resource resource : resources.getItem()) {
+				update(digest, "resource", resource.getId() + " " + resource.getPath());
+			}
+		}
+		return ContentHash.toHex(digest.digest());
+	}
+
+	/**
+	 * Returns the fingerprint stored next to an output file, or null if there is none.
+	 */
+	public static String read(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return new String(Files.readAllBytes(file.toPath()), UTF_8).trim();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public static void write(File file, String fingerprint) throws IOException {
+		Files.write(file.toPath(), fingerprint.getBytes(UTF_8));
+	}
+
+	private static String getLatestDeploymentId(RestApi restApi) {
+		String latestId = null;
+		Date latestDate = null;
+		try {
+			for (Deployments deployments = restApi.getDeployments(); deployments != null; deployments = safeGetNext(deployments)) {
+				for (Deployment deployment : deployments.getItem()) {
+					Date createdDate = deployment.getCreatedDate();
+					if (latestDate == null || (createdDate != null && createdDate.after(latestDate))) {
+						latestId = deployment.getId();
+						latestDate = createdDate;
+					}
+				}
+			}
+		} catch (UnsupportedOperationException e) {
+			//API without deployments
+		}
+		return latestId;
+	}
+
+	private static Deployments safeGetNext(Deployments deployments) {
+		try {
+			return deployments.getNext();
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest digest, String key, String value) {
+		digest.update((key + "=" + value + "\n").getBytes(UTF_8));
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
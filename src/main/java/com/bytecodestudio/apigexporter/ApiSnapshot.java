@@ -0,0 +1,353 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Materialized copy of the API Gateway state needed to generate a Swagger document.
+ * Populated by {@link ApiFetcher}, so the Swagger transformation never follows HAL links itself.
+ */
+public class ApiSnapshot {
+
+	private String id;
+	private String name;
+	private String description;
+	private List<Resource> resources = new ArrayList<Resource>();
+	private List<Model> models = new ArrayList<Model>();
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public List<Resource> getResources() {
+		return resources;
+	}
+
+	public void setResources(List<Resource> resources) {
+		this.resources = resources;
+	}
+
+	public List<Model> getModels() {
+		return models;
+	}
+
+	public void setModels(List<Model> models) {
+		this.models = models;
+	}
+
+	/**
+	 * Copies a HAL map preserving iteration order and null values.
+	 * Workaround for com.amazonaws.hal.client.ConvertingMap, which fails on null values in entrySet().
+	 */
+	static <V> Map<String, V> copyOf(Map<String, V> map) {
+		if (map == null) {
+			return null;
+		}
+		Map<String, V> copy = new LinkedHashMap<String, V>();
+		for (String key : map.keySet()) {
+			copy.put(key, map.get(key));
+		}
+		return copy;
+	}
+
+	public static class Resource {
+		private String id;
+		private String path;
+		private Map<String, Method> methods = new LinkedHashMap<String, Method>();
+
+		public String getId() {
+			return id;
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public void setPath(String path) {
+			this.path = path;
+		}
+
+		public Map<String, Method> getMethods() {
+			return methods;
+		}
+
+		public void setMethods(Map<String, Method> methods) {
+			this.methods = methods;
+		}
+	}
+
+	public static class Method {
+		private String httpMethod;
+		private String authorizationType;
+		private Boolean apiKeyRequired;
+		private Map<String, String> requestModels;
+		private Map<String, Boolean> requestParameters;
+		private Map<String, MethodResponse> methodResponses;
+		private Integration integration;
+
+		public String getHttpMethod() {
+			return httpMethod;
+		}
+
+		public void setHttpMethod(String httpMethod) {
+			this.httpMethod = httpMethod;
+		}
+
+		public String getAuthorizationType() {
+			return authorizationType;
+		}
+
+		public void setAuthorizationType(String authorizationType) {
+			this.authorizationType = authorizationType;
+		}
+
+		public Boolean getApiKeyRequired() {
+			return apiKeyRequired;
+		}
+
+		public void setApiKeyRequired(Boolean apiKeyRequired) {
+			this.apiKeyRequired = apiKeyRequired;
+		}
+
+		public Map<String, String> getRequestModels() {
+			return requestModels;
+		}
+
+		public void setRequestModels(Map<String, String> requestModels) {
+			this.requestModels = requestModels;
+		}
+
+		public Map<String, Boolean> getRequestParameters() {
+			return requestParameters;
+		}
+
+		public void setRequestParameters(Map<String, Boolean> requestParameters) {
+			this.requestParameters = requestParameters;
+		}
+
+		public Map<String, MethodResponse> getMethodResponses() {
+			return methodResponses;
+		}
+
+		public void setMethodResponses(Map<String, MethodResponse> methodResponses) {
+			this.methodResponses = methodResponses;
+		}
+
+		public Integration getIntegration() {
+			return integration;
+		}
+
+		public void setIntegration(Integration integration) {
+			this.integration = integration;
+		}
+	}
+
+	public static class MethodResponse {
+		private String statusCode;
+		private Map<String, Boolean> responseParameters;
+		private Map<String, String> responseModels;
+
+		public String getStatusCode() {
+			return statusCode;
+		}
+
+		public void setStatusCode(String statusCode) {
+			this.statusCode = statusCode;
+		}
+
+		public Map<String, Boolean> getResponseParameters() {
+			return responseParameters;
+		}
+
+		public void setResponseParameters(Map<String, Boolean> responseParameters) {
+			this.responseParameters = responseParameters;
+		}
+
+		public Map<String, String> getResponseModels() {
+			return responseModels;
+		}
+
+		public void setResponseModels(Map<String, String> responseModels) {
+			this.responseModels = responseModels;
+		}
+	}
+
+	public static class Integration {
+		private String type;
+		private String uri;
+		private String httpMethod;
+		private String credentials;
+		private String cacheNamespace;
+		private List<String> cacheKeyParameters;
+		private Map<String, String> requestTemplates;
+		private Map<String, String> requestParameters;
+		private Map<String, IntegrationResponse> integrationResponses;
+
+		public String getType() {
+			return type;
+		}
+
+		public void setType(String type) {
+			this.type = type;
+		}
+
+		public String getUri() {
+			return uri;
+		}
+
+		public void setUri(String uri) {
+			this.uri = uri;
+		}
+
+		public String getHttpMethod() {
+			return httpMethod;
+		}
+
+		public void setHttpMethod(String httpMethod) {
+			this.httpMethod = httpMethod;
+		}
+
+		public String getCredentials() {
+			return credentials;
+		}
+
+		public void setCredentials(String credentials) {
+			this.credentials = credentials;
+		}
+
+		public String getCacheNamespace() {
+			return cacheNamespace;
+		}
+
+		public void setCacheNamespace(String cacheNamespace) {
+			this.cacheNamespace = cacheNamespace;
+		}
+
+		public List<String> getCacheKeyParameters() {
+			return cacheKeyParameters;
+		}
+
+		public void setCacheKeyParameters(List<String> cacheKeyParameters) {
+			this.cacheKeyParameters = cacheKeyParameters;
+		}
+
+		public Map<String, String> getRequestTemplates() {
+			return requestTemplates;
+		}
+
+		public void setRequestTemplates(Map<String, String> requestTemplates) {
+			this.requestTemplates = requestTemplates;
+		}
+
+		public Map<String, String> getRequestParameters() {
+			return requestParameters;
+		}
+
+		public void setRequestParameters(Map<String, String> requestParameters) {
+			this.requestParameters = requestParameters;
+		}
+
+		public Map<String, IntegrationResponse> getIntegrationResponses() {
+			return integrationResponses;
+		}
+
+		public void setIntegrationResponses(Map<String, IntegrationResponse> integrationResponses) {
+			this.integrationResponses = integrationResponses;
+		}
+	}
+
+	public static class IntegrationResponse {
+		private String statusCode;
+		private String selectionPattern;
+		private Map<String, String> responseParameters;
+		private Map<String, String> responseTemplates;
+
+		public String getStatusCode() {
+			return statusCode;
+		}
+
+		public void setStatusCode(String statusCode) {
+			this.statusCode = statusCode;
+		}
+
+		public String getSelectionPattern() {
+			return selectionPattern;
+		}
+
+		public void setSelectionPattern(String selectionPattern) {
+			this.selectionPattern = selectionPattern;
+		}
+
+		public Map<String, String> getResponseParameters() {
+			return responseParameters;
+		}
+
+		public void setResponseParameters(Map<String, String> responseParameters) {
+			this.responseParameters = responseParameters;
+		}
+
+		public Map<String, String> getResponseTemplates() {
+			return responseTemplates;
+		}
+
+		public void setResponseTemplates(Map<String, String> responseTemplates) {
+			this.responseTemplates = responseTemplates;
+		}
+	}
+
+	public static class Model {
+		private String name;
+		private String description;
+		private String schema;
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+
+		public void setDescription(String description) {
+			this.description = description;
+		}
+
+		public String getSchema() {
+			return schema;
+		}
+
+		public void setSchema(String schema) {
+			this.schema = schema;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compact offline copy of everything an export fetches: the API, its resources with methods and integrations,
+ * and its models. An API captured once can be transformed again, with other options or formats,
+ * without calling AWS.
+ * <p>
+ * The file starts with a magic number and format version, followed by length-prefixed records of
+ * deflate-compressed JSON: a header with the API metadata, the region and the record counts,
+ * then one record per resource and one per model. Records are decoded one at a time from a memory-mapped
+ * buffer, so reading costs little more than inflating and parsing the records.
+ */
+public class ApiSnapshotFile {
+
+	public static final String FILE_SUFFIX = ".apisnapshot";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] MAGIC = "APIGSNAP".getBytes(UTF_8);
+	private static final int VERSION = 1;
+	/**
+	 * Deflate expands a byte to at most 1032 bytes, so a record that claims more is corrupt.
+	 */
+	private static final int MAX_INFLATION_RATIO = 1032;
+	/**
+	 * Every record has an 8 byte length prefix.
+	 */
+	private static final int MIN_RECORD_SIZE = 8;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final ApiSnapshot snapshot;
+	private final String region;
+	private final long createdMillis;
+
+	private ApiSnapshotFile(ApiSnapshot snapshot, String region, long createdMillis) {
+		this.snapshot = snapshot;
+		this.region = region;
+		this.createdMillis = createdMillis;
+	}
+
+	public ApiSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Region the API was fetched from, which determines the host of the exported document.
+	 */
+	public String getRegion() {
+		return region;
+	}
+
+	public long getCreatedMillis() {
+		return createdMillis;
+	}
+
+	/**
+	 * Writes the snapshot through a temporary file, so that an interrupted write does not leave a truncated file.
+	 */
+	public static void write(File file, ApiSnapshot snapshot, String region) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (!parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create directory " + parent);
+		}
+		File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+		try {
+			Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+				out.write(MAGIC);
+				out.writeInt(VERSION);
+				Map<String, Object> header = new LinkedHashMap<String, Object>();
+				header.put("id", snapshot.getId());
+				header.put("name", snapshot.getName());
+				header.put("description", snapshot.getDescription());
+				header.put("region", region);
+				header.put("created", System.currentTimeMillis());
+				header.put("resources", snapshot.getResources().size());
+				header.put("models", snapshot.getModels().size());
+				writeRecord(out, deflater, header);
+				for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+					writeRecord(out, deflater, resource);
+				}
+				for (ApiSnapshot.Model model : snapshot.getModels()) {
+					writeRecord(out, deflater, model);
+				}
+			} finally {
+				deflater.end();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	public static ApiSnapshotFile read(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			byte[] magic = new byte[MAGIC.length];
+			if (buffer.remaining() < MAGIC.length + 4 || !Arrays.equals(MAGIC, get(buffer, magic))) {
+				throw new IOException(file + " is not an API snapshot file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException(file + " has snapshot format version " + version + ", expected " + VERSION);
+			}
+			Inflater inflater = new Inflater();
+			try {
+				JsonNode header = MAPPER.readTree(readRecord(buffer, inflater, file));
+				ApiSnapshot snapshot = new ApiSnapshot();
+				snapshot.setId(getText(header, "id"));
+				snapshot.setName(getText(header, "name"));
+				snapshot.setDescription(getText(header, "description"));
+				int resourceCount = getCount(header, "resources", buffer, file);
+				List<ApiSnapshot.Resource> resources = new ArrayList<ApiSnapshot.Resource>(resourceCount);
+				for (int i = 0; i < resourceCount; i++) {
+					resources.add(MAPPER.readValue(readRecord(buffer, inflater, file), ApiSnapshot.Resource.class));
+				}
+				snapshot.setResources(resources);
+				int modelCount = getCount(header, "models", buffer, file);
+				List<ApiSnapshot.Model> models = new ArrayList<ApiSnapshot.Model>(modelCount);
+				for (int i = 0; i < modelCount; i++) {
+					models.add(MAPPER.readValue(readRecord(buffer, inflater, file), ApiSnapshot.Model.class));
+				}
+				snapshot.setModels(models);
+				return new ApiSnapshotFile(snapshot, getText(header, "region"), header.path("created").asLong());
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Record layout: uncompressed length, compressed length, compressed bytes.
+	 */
+	private static void writeRecord(DataOutputStream out, Deflater deflater, Object value) throws IOException {
+		byte[] json = MAPPER.writeValueAsBytes(value);
+		deflater.reset();
+		deflater.setInput(json);
+		deflater.finish();
+		byte[] compressed = new byte[Math.max(64, json.length + json.length / 100 + 64)];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == compressed.length) {
+				compressed = Arrays.copyOf(compressed, compressed.length * 2);
+			}
+			length += deflater.deflate(compressed, length, compressed.length - length);
+		}
+		out.writeInt(json.length);
+		out.writeInt(length);
+		out.write(compressed, 0, length);
+	}
+
+	private static byte[] readRecord(ByteBuffer buffer, Inflater inflater, File file) throws IOException {
+		if (buffer.remaining() < 8) {
+			throw new IOException(file + " is truncated");
+		}
+		int length = buffer.getInt();
+		int compressedLength = buffer.getInt();
+		if (length < 0 || compressedLength < 0 || compressedLength > buffer.remaining()) {
+			throw new IOException(file + " is truncated or corrupt");
+		}
+		if ((long) length > (long) compressedLength * MAX_INFLATION_RATIO) {
+			throw new IOException(file + " is corrupt");
+		}
+		byte[] compressed = get(buffer, new byte[compressedLength]);
+		byte[] result = new byte[length];
+		inflater.reset();
+		inflater.setInput(compressed);
+		try {
+			if (inflater.inflate(result) != length || !inflater.finished()) {
+				throw new IOException(file + " is corrupt");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(file + " is corrupt", e);
+		}
+		return result;
+	}
+
+	/**
+	 * Record count of the header, which cannot exceed the records that fit in the rest of the file.
+	 */
+	private static int getCount(JsonNode header, String field, ByteBuffer buffer, File file) throws IOException {
+		int count = header.path(field).asInt();
+		if (count < 0 || count > buffer.remaining() / MIN_RECORD_SIZE) {
+			throw new IOException(file + " is corrupt");
+		}
+		return count;
+	}
+
+	private static byte[] get(ByteBuffer buffer, byte[] bytes) {
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	private static String getText(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		return value != null && !value.isNull() ? value.asText() : null;
+	}
+}
@@ -0,0 +1,226 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.swagger.models.Swagger;
+import io.swagger.util.Json;
+
+/**
+ * Exports many APIs concurrently through one {@link APIGExporter}, so all exports share
+ * the same API Gateway client and connection pool. Each API is fetched once and written to one file
+ * per format in the output directory, followed by a manifest with timings and failures.
+ */
+public class BatchExporter {
+
+	public static final String MANIFEST_FILE = "manifest.json";
+
+	private static final Log LOG = LogFactory.getLog(BatchExporter.class);
+
+	private final APIGExporter exporter;
+	private final int concurrency;
+	private boolean skipUnchanged;
+	private boolean refresh;
+	private boolean streaming;
+
+	public BatchExporter(APIGExporter exporter, int concurrency) {
+		this.exporter = exporter;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Skips APIs whose fingerprint matches the one stored with their previous export.
+	 * The fingerprint only detects deployments and changes of the resource list, see {@link ApiFingerprint}.
+	 */
+	public void setSkipUnchanged(boolean skipUnchanged) {
+		this.skipUnchanged = skipUnchanged;
+	}
+
+	/**
+	 * Ignores cached responses and replaces them with freshly fetched ones. APIs whose fingerprint changed
+	 * are always refreshed.
+	 */
+	public void setRefresh(boolean refresh) {
+		this.refresh = refresh;
+	}
+
+	/**
+	 * Fetches, transforms and writes each document resource by resource, without holding the complete API
+	 * or Swagger model, see {@link APIGExporter#exportStreaming}.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public List<Result> export(List<String> apiIds, final List<OutputFormat> formats, final File outputDir) throws IOException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Could not create output directory " + outputDir);
+		}
+		long start = System.currentTimeMillis();
+		List<Future<Result>> futures = new ArrayList<Future<Result>>();
+		ExecutorService executor = ApiFetcher.newExecutor(concurrency, false);
+		try {
+			for (final String apiId : apiIds) {
+				futures.add(executor.submit(new Callable<Result>() {
+					@Override
+					public Result call() {
+						return export(apiId, formats, outputDir);
+					}
+				}));
+			}
+			List<Result> results = new ArrayList<Result>();
+			for (Future<Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while exporting APIs", e);
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+			}
+			writeManifest(results, formats, System.currentTimeMillis() - start, new File(outputDir, MANIFEST_FILE));
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Result export(String apiId, List<OutputFormat> formats, File outputDir) {
+		Result result = new Result(apiId);
+		long start = System.currentTimeMillis();
+		try {
+			File fingerprintFile = new File(outputDir, apiId + ApiFingerprint.FILE_SUFFIX);
+			String fingerprint = skipUnchanged ? exporter.getFingerprint(apiId) : null;
+			boolean unchanged = fingerprint != null && fingerprint.equals(ApiFingerprint.read(fingerprintFile));
+			for (OutputFormat format : formats) {
+				File file = new File(outputDir, apiId + "." + format.getName());
+				unchanged &= file.isFile();
+				result.files.add(file.getName());
+			}
+			if (unchanged) {
+				result.unchanged = true;
+				LOG.info("API " + apiId + " is unchanged, skipping export");
+			} else {
+				if (streaming) {
+					exportStreaming(apiId, formats, outputDir, refresh || fingerprint != null);
+				} else {
+					final Swagger swagger = exporter.transform(exporter.fetchSnapshot(apiId, refresh || fingerprint != null));
+					for (final OutputFormat format : formats) {
+						File file = new File(outputDir, apiId + "." + format.getName());
+						ContentHash.writeIfChanged(file, new ContentHash.Content() {
+							@Override
+							public void write(OutputStream out) throws IOException {
+								exporter.write(swagger, format, out);
+							}
+						});
+					}
+				}
+				if (fingerprint != null) {
+					ApiFingerprint.write(fingerprintFile, fingerprint);
+				}
+				LOG.info("Exported API " + apiId + " to " + outputDir);
+			}
+		} catch (Throwable t) {
+			result.error = t.getMessage() != null ? t.getMessage() : t.toString();
+			LOG.error("Error exporting API " + apiId, t);
+		}
+		result.durationMillis = System.currentTimeMillis() - start;
+		return result;
+	}
+
+	/**
+	 * Fetches and writes the resources one after the other, in all formats at once.
+	 */
+	private void exportStreaming(final String apiId, final List<OutputFormat> formats, File outputDir, final boolean refresh) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (OutputFormat format : formats) {
+			files.add(new File(outputDir, apiId + "." + format.getName()));
+		}
+		ContentHash.writeIfChanged(files, new ContentHash.Contents() {
+			@Override
+			public void write(List<OutputStream> outs) throws IOException {
+				exporter.exportStreaming(apiId, refresh, formats, outs);
+			}
+		});
+	}
+
+	private static void writeManifest(List<Result> results, List<OutputFormat> formats, long durationMillis, File file) throws IOException {
+		int failed = 0;
+		List<Map<String, Object>> apis = new ArrayList<Map<String, Object>>();
+		for (Result result : results) {
+			Map<String, Object> api = new LinkedHashMap<String, Object>();
+			api.put("id", result.apiId);
+			api.put("status", !result.isSuccess() ? "failed" : (result.isUnchanged() ? "unchanged" : "exported"));
+			api.put("files", result.files);
+			api.put("durationMillis", result.durationMillis);
+			if (!result.isSuccess()) {
+				api.put("error", result.error);
+				failed++;
+			}
+			apis.add(api);
+		}
+		Map<String, Object> manifest = new LinkedHashMap<String, Object>();
+		List<String> formatNames = new ArrayList<String>();
+		for (OutputFormat format : formats) {
+			formatNames.add(format.getName());
+		}
+		manifest.put("formats", formatNames);
+		manifest.put("durationMillis", durationMillis);
+		manifest.put("exported", results.size() - failed);
+		manifest.put("failed", failed);
+		manifest.put("apis", apis);
+		Json.pretty().writeValue(file, manifest);
+	}
+
+	public static class Result {
+		private final String apiId;
+		private final List<String> files = new ArrayList<String>();
+		private String error;
+		private long durationMillis;
+		private boolean unchanged;
+
+		Result(String apiId) {
+			this.apiId = apiId;
+		}
+
+		public String getApiId() {
+			return apiId;
+		}
+
+		public List<String> getFiles() {
+			return files;
+		}
+
+		public String getError() {
+			return error;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		/**
+		 * True if the export was skipped because the API did not change since the previous export.
+		 */
+		public boolean isUnchanged() {
+			return unchanged;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSSessionCredentials;
+
+/**
+ * Resolves credentials once and hands out the same instance to every request, instead of asking the
+ * delegate, which may read the AWS configuration files, for each signed request.
+ * Long-term credentials are kept until {@link #refresh()} is called. Session credentials expire,
+ * so they are resolved again after the refresh interval.
+ */
+public class CachingCredentialsProvider implements AWSCredentialsProvider {
+
+	public static final long DEFAULT_SESSION_REFRESH_MILLIS = 5 * 60 * 1000L;
+
+	private final AWSCredentialsProvider delegate;
+	private final long sessionRefreshNanos;
+	private AWSCredentials credentials;
+	private long expiresNanos;
+
+	public CachingCredentialsProvider(AWSCredentialsProvider delegate) {
+		this(delegate, DEFAULT_SESSION_REFRESH_MILLIS);
+	}
+
+	/**
+	 * @param sessionRefreshMillis time after which session credentials are resolved again,
+	 * shorter than the lifetime of the sessions
+	 */
+	public CachingCredentialsProvider(AWSCredentialsProvider delegate, long sessionRefreshMillis) {
+		this.delegate = delegate;
+		this.sessionRefreshNanos = TimeUnit.MILLISECONDS.toNanos(sessionRefreshMillis);
+	}
+
+	@Override
+	public synchronized AWSCredentials getCredentials() {
+		if (credentials == null || (credentials instanceof AWSSessionCredentials && System.nanoTime() - expiresNanos >= 0)) {
+			credentials = delegate.getCredentials();
+			expiresNanos = System.nanoTime() + sessionRefreshNanos;
+		}
+		return credentials;
+	}
+
+	@Override
+	public synchronized void refresh() {
+		delegate.refresh();
+		credentials = null;
+	}
+}
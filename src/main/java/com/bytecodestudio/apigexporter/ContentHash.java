@@ -0,0 +1,145 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SHA-256 hash of exported documents, computed while they are written. A document is written to a temporary
+ * file and only replaces the existing file if their hashes differ, so an unchanged export leaves the file,
+ * and its modification time, untouched and does not trigger downstream builds, commits or cache invalidations.
+ * Together with canonical output, two exports of an unchanged API produce the same hash.
+ */
+public class ContentHash {
+
+	private static final String ALGORITHM = "SHA-256";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private ContentHash() {
+	}
+
+	/**
+	 * Writes the content of a file.
+	 */
+	public interface Content {
+		void write(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * Writes the contents of several files at once.
+	 */
+	public interface Contents {
+
+		/**
+		 * @param outs one stream per file, in the order of the files
+		 */
+		void write(List<OutputStream> outs) throws IOException;
+	}
+
+	/**
+	 * Writes the content to the file unless the file already has the same content.
+	 *
+	 * @return true if the file was written, false if it was unchanged
+	 */
+	public static boolean writeIfChanged(File file, final Content content) throws IOException {
+		return writeIfChanged(Collections.singletonList(file), new Contents() {
+			@Override
+			public void write(List<OutputStream> outs) throws IOException {
+				content.write(outs.get(0));
+			}
+		}).get(0);
+	}
+
+	/**
+	 * Writes the contents to the files, and replaces each file that does not already have the same content.
+	 *
+	 * @return for each file, true if it was written, false if it was unchanged
+	 */
+	public static List<Boolean> writeIfChanged(List<File> files, Contents contents) throws IOException {
+		List<File> tmps = new ArrayList<File>();
+		List<MessageDigest> digests = new ArrayList<MessageDigest>();
+		List<OutputStream> outs = new ArrayList<OutputStream>();
+		try {
+			try {
+				for (File file : files) {
+					File parent = file.getAbsoluteFile().getParentFile();
+					if (!parent.isDirectory() && !parent.mkdirs()) {
+						throw new IOException("Could not create directory " + parent);
+					}
+					File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+					tmps.add(tmp);
+					MessageDigest digest = newDigest();
+					digests.add(digest);
+					outs.add(new BufferedOutputStream(new DigestOutputStream(new FileOutputStream(tmp), digest)));
+				}
+				contents.write(outs);
+			} finally {
+				for (OutputStream out : outs) {
+					out.close();
+				}
+			}
+			List<Boolean> result = new ArrayList<Boolean>();
+			for (int i = 0; i < files.size(); i++) {
+				File file = files.get(i);
+				File tmp = tmps.get(i);
+				if (file.isFile() && file.length() == tmp.length() && toHex(digests.get(i).digest()).equals(of(file))) {
+					result.add(false);
+				} else {
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					result.add(true);
+				}
+			}
+			return result;
+		} finally {
+			for (File tmp : tmps) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return the hex encoded hash of the file content
+	 */
+	public static String of(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] buffer = new byte[65536];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		}
+	}
+
+	/**
+	 * Lower case hex of the bytes, shared by the hashes of this package.
+	 */
+	static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,87 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * In-memory cache of generated documents for the export server. Entries expire after a fixed TTL,
+ * and the least recently used entries are evicted when the total size exceeds the limit.
+ */
+public class DocumentCache {
+
+	public static final long DEFAULT_TTL_MILLIS = 60 * 1000L;
+	public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024L;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final long ttlMillis;
+	private final long maxBytes;
+	private long totalBytes;
+
+	public DocumentCache(long ttlMillis, long maxBytes) {
+		this.ttlMillis = ttlMillis;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the cached document, or null if there is none or it has expired.
+	 */
+	public synchronized byte[] get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (System.currentTimeMillis() - entry.created > ttlMillis) {
+			remove(key);
+			return null;
+		}
+		return entry.document;
+	}
+
+	/**
+	 * Documents larger than the cache are not stored.
+	 */
+	public synchronized void put(String key, byte[] document) {
+		remove(key);
+		if (document.length > maxBytes) {
+			return;
+		}
+		entries.put(key, new Entry(document));
+		totalBytes += document.length;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (totalBytes > maxBytes && iterator.hasNext()) {
+			totalBytes -= iterator.next().document.length;
+			iterator.remove();
+		}
+	}
+
+	public synchronized void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			totalBytes -= entry.document.length;
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Key of a document in the cache.
+	 */
+	static String getKey(String region, String restApiId, OutputFormat format) {
+		return region + "/" + restApiId + "." + format.getName();
+	}
+
+	private static class Entry {
+		private final byte[] document;
+		private final long created = System.currentTimeMillis();
+
+		Entry(byte[] document) {
+			this.document = document;
+		}
+	}
+}
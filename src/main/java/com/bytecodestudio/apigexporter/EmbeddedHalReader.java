@@ -0,0 +1,553 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.http.HttpMethodName;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads all resources of an API with their methods, method responses, integrations and integration responses
+ * embedded ({@code GET /restapis/{id}/resources?embed=methods}), and the models, in pages of the maximum size.
+ * An export then takes a few requests per 500 resources instead of several requests per method.
+ * Exports of some resources read the resource list without methods, and then each of those resources
+ * with its methods embedded ({@code GET /restapis/{id}/resources/{resource_id}?embed=methods}).
+ * <p>
+ * The HAL client follows links one at a time and cannot ask for embedded resources, so these pages are
+ * requested directly, signed with the credentials of the exporter. If the endpoint does not embed
+ * the requested resources, {@link #readResources(String)} returns null and the caller falls back to following links.
+ * <p>
+ * The pages are sent with {@link HttpURLConnection}, not through the API Gateway client, with the settings of
+ * the client's {@link ClientConfiguration}: its connection and socket timeouts, user agent and proxy, with basic
+ * proxy authentication. Server errors are retried as often as the client retries them, and throttling as often as
+ * the {@link AdaptiveLimiter} retries it, both with the limiter's backoff. Connections are pooled and kept alive
+ * by the JVM ({@code http.keepAlive}, {@code http.maxConnections}), not by the client's pool. Where the proxy
+ * needs NTLM authentication, which the reader does not support, disable embedding with {@code --no-embed}.
+ */
+class EmbeddedHalReader {
+
+	static final int MAX_PAGE_SIZE = 500;
+
+	private static final Log LOG = LogFactory.getLog(EmbeddedHalReader.class);
+	private static final String SERVICE_NAME = "apigateway";
+	private static final int HTTP_BAD_REQUEST = 400;
+	private static final int DEFAULT_PROXY_PORT = 80;
+	//Retries of the SDK's default retry policy, when the configuration leaves them unset
+	private static final int DEFAULT_MAX_ERROR_RETRY = 3;
+	private static final String BAD_REQUEST = "BadRequestException";
+	private static final String ACCEPT = "application/hal+json";
+	private static final TypeReference<Map<String, String>> STRING_MAP_TYPE = new TypeReference<Map<String, String>>() {};
+	private static final TypeReference<Map<String, Boolean>> BOOLEAN_MAP_TYPE = new TypeReference<Map<String, Boolean>>() {};
+	private static final TypeReference<List<String>> STRING_LIST_TYPE = new TypeReference<List<String>>() {};
+
+	private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	private final String endpoint;
+	private final String region;
+	private final AWSCredentialsProvider credsProvider;
+	private ClientConfiguration clientConfiguration = new ClientConfiguration();
+	private ExportMetrics metrics;
+	private AdaptiveLimiter limiter;
+	private RequestHedger hedger;
+	private volatile boolean embedUnsupported;
+	private volatile boolean limitUnsupported;
+
+	EmbeddedHalReader(String endpoint, String region, AWSCredentialsProvider credsProvider) {
+		this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+		this.region = region;
+		this.credsProvider = credsProvider;
+	}
+
+	/**
+	 * Sets the configuration of the API Gateway client, whose timeouts, proxy and retries apply to the pages too.
+	 */
+	void setClientConfiguration(ClientConfiguration clientConfiguration) {
+		this.clientConfiguration = clientConfiguration;
+	}
+
+	void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	void setLimiter(AdaptiveLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	void setHedger(RequestHedger hedger) {
+		this.hedger = hedger;
+	}
+
+	/**
+	 * @return the resources with methods and integrations, or null if the endpoint does not support
+	 * embedding or page limits. Once it has not, the reader returns null without sending requests.
+	 */
+	List<ApiSnapshot.Resource> readResources(String restApiId) throws IOException {
+		if (embedUnsupported || limitUnsupported) {
+			return null;
+		}
+		List<ApiSnapshot.Resource> result = new ArrayList<ApiSnapshot.Resource>();
+		String href = "/restapis/" + restApiId + "/resources?embed=methods&limit=" + MAX_PAGE_SIZE;
+		while (href != null) {
+			JsonNode page = get(href, ExportMetrics.LINK_RESOURCES);
+			if (page == null) {
+				embedUnsupported = true;
+				return null;
+			}
+			for (JsonNode item : getEmbedded(page, "item")) {
+				ApiSnapshot.Resource resource = toResource(item);
+				if (resource == null) {
+					LOG.info("API Gateway endpoint " + endpoint + " does not embed methods, following links instead");
+					embedUnsupported = true;
+					return null;
+				}
+				result.add(resource);
+			}
+			href = getNextHref(page, "embed=methods");
+		}
+		return result;
+	}
+
+	/**
+	 * Lists the ids and paths of all resources, without their methods, for exports that read only some resources.
+	 *
+	 * @return the resources without methods, or null if the endpoint does not support page limits
+	 */
+	List<ApiSnapshot.Resource> listResources(String restApiId) throws IOException {
+		if (limitUnsupported) {
+			return null;
+		}
+		List<ApiSnapshot.Resource> result = new ArrayList<ApiSnapshot.Resource>();
+		String href = "/restapis/" + restApiId + "/resources?limit=" + MAX_PAGE_SIZE;
+		while (href != null) {
+			JsonNode page = get(href, ExportMetrics.LINK_RESOURCES);
+			if (page == null) {
+				limitUnsupported = true;
+				return null;
+			}
+			for (JsonNode item : getEmbedded(page, "item")) {
+				ApiSnapshot.Resource resource = new ApiSnapshot.Resource();
+				resource.setId(getText(item, "id"));
+				resource.setPath(getText(item, "path"));
+				result.add(resource);
+			}
+			href = getNextHref(page, null);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads a single resource with its methods and integrations embedded, in one request.
+	 *
+	 * @return the resource, or null if the endpoint does not support embedding
+	 */
+	ApiSnapshot.Resource readResource(String restApiId, String resourceId) throws IOException {
+		if (embedUnsupported) {
+			return null;
+		}
+		JsonNode node = get("/restapis/" + restApiId + "/resources/" + resourceId + "?embed=methods", ExportMetrics.LINK_METHODS);
+		if (node == null) {
+			embedUnsupported = true;
+			return null;
+		}
+		ApiSnapshot.Resource resource = toResource(node);
+		if (resource == null) {
+			LOG.info("API Gateway endpoint " + endpoint + " does not embed methods, following links instead");
+			embedUnsupported = true;
+		}
+		return resource;
+	}
+
+	/**
+	 * Models have nothing to embed, so they are read in pages of the maximum size
+	 * whether or not the endpoint embeds methods.
+	 *
+	 * @return the models, or null if the endpoint does not support page limits
+	 */
+	List<ApiSnapshot.Model> readModels(String restApiId) throws IOException {
+		if (limitUnsupported) {
+			return null;
+		}
+		List<ApiSnapshot.Model> result = new ArrayList<ApiSnapshot.Model>();
+		String href = "/restapis/" + restApiId + "/models?limit=" + MAX_PAGE_SIZE;
+		while (href != null) {
+			JsonNode page = get(href, ExportMetrics.LINK_MODELS);
+			if (page == null) {
+				limitUnsupported = true;
+				return null;
+			}
+			for (JsonNode item : getEmbedded(page, "item")) {
+				ApiSnapshot.Model model = new ApiSnapshot.Model();
+				model.setName(getText(item, "name"));
+				model.setDescription(getText(item, "description"));
+				model.setSchema(getText(item, "schema"));
+				result.add(model);
+			}
+			href = getNextHref(page, null);
+		}
+		return result;
+	}
+
+	/**
+	 * @return null if the methods, or anything below them, are linked but not embedded
+	 */
+	private ApiSnapshot.Resource toResource(JsonNode node) {
+		ApiSnapshot.Resource resource = new ApiSnapshot.Resource();
+		resource.setId(getText(node, "id"));
+		resource.setPath(getText(node, "path"));
+		List<JsonNode> methods = getEmbedded(node, "resource:methods");
+		if (methods.isEmpty() && hasLink(node, "resource:methods")) {
+			return null;
+		}
+		Map<String, ApiSnapshot.Method> resourceMethods = new LinkedHashMap<String, ApiSnapshot.Method>();
+		for (JsonNode methodNode : methods) {
+			ApiSnapshot.Method method = toMethod(methodNode);
+			if (method == null) {
+				return null;
+			}
+			resourceMethods.put(method.getHttpMethod(), method);
+		}
+		resource.setMethods(resourceMethods);
+		return resource;
+	}
+
+	private ApiSnapshot.Method toMethod(JsonNode node) {
+		ApiSnapshot.Method method = new ApiSnapshot.Method();
+		method.setHttpMethod(getText(node, "httpMethod"));
+		method.setAuthorizationType(getText(node, "authorizationType"));
+		method.setApiKeyRequired(node.hasNonNull("apiKeyRequired") ? node.get("apiKeyRequired").asBoolean() : null);
+		method.setRequestModels(convert(node.get("requestModels"), STRING_MAP_TYPE));
+		method.setRequestParameters(convert(node.get("requestParameters"), BOOLEAN_MAP_TYPE));
+
+		List<JsonNode> responses = getEmbedded(node, "method:responses");
+		if (responses.isEmpty() && hasLink(node, "method:responses")) {
+			return null;
+		}
+		if (!responses.isEmpty()) {
+			Map<String, ApiSnapshot.MethodResponse> methodResponses = new LinkedHashMap<String, ApiSnapshot.MethodResponse>();
+			for (JsonNode responseNode : responses) {
+				ApiSnapshot.MethodResponse response = new ApiSnapshot.MethodResponse();
+				response.setStatusCode(getText(responseNode, "statusCode"));
+				response.setResponseParameters(convert(responseNode.get("responseParameters"), BOOLEAN_MAP_TYPE));
+				response.setResponseModels(convert(responseNode.get("responseModels"), STRING_MAP_TYPE));
+				methodResponses.put(response.getStatusCode(), response);
+			}
+			method.setMethodResponses(methodResponses);
+		}
+
+		List<JsonNode> integrations = getEmbedded(node, "method:integration");
+		if (integrations.isEmpty()) {
+			return hasLink(node, "method:integration") ? null : method;
+		}
+		ApiSnapshot.Integration integration = toIntegration(integrations.get(0));
+		if (integration == null) {
+			return null;
+		}
+		method.setIntegration(integration);
+		return method;
+	}
+
+	private ApiSnapshot.Integration toIntegration(JsonNode node) {
+		ApiSnapshot.Integration integration = new ApiSnapshot.Integration();
+		integration.setType(getText(node, "type"));
+		integration.setUri(getText(node, "uri"));
+		integration.setHttpMethod(getText(node, "httpMethod"));
+		integration.setCredentials(getText(node, "credentials"));
+		integration.setCacheNamespace(getText(node, "cacheNamespace"));
+		integration.setCacheKeyParameters(convert(node.get("cacheKeyParameters"), STRING_LIST_TYPE));
+		integration.setRequestTemplates(convert(node.get("requestTemplates"), STRING_MAP_TYPE));
+		integration.setRequestParameters(convert(node.get("requestParameters"), STRING_MAP_TYPE));
+
+		List<JsonNode> responses = getEmbedded(node, "integration:responses");
+		if (responses.isEmpty() && hasLink(node, "integration:responses")) {
+			return null;
+		}
+		if (!responses.isEmpty()) {
+			Map<String, ApiSnapshot.IntegrationResponse> integrationResponses = new LinkedHashMap<String, ApiSnapshot.IntegrationResponse>();
+			for (JsonNode responseNode : responses) {
+				ApiSnapshot.IntegrationResponse response = new ApiSnapshot.IntegrationResponse();
+				response.setStatusCode(getText(responseNode, "statusCode"));
+				response.setSelectionPattern(getText(responseNode, "selectionPattern"));
+				response.setResponseParameters(convert(responseNode.get("responseParameters"), STRING_MAP_TYPE));
+				response.setResponseTemplates(convert(responseNode.get("responseTemplates"), STRING_MAP_TYPE));
+				integrationResponses.put(response.getStatusCode(), response);
+			}
+			integration.setIntegrationResponses(integrationResponses);
+		}
+		return integration;
+	}
+
+	/**
+	 * HAL embeds a single resource as an object and several as an array.
+	 */
+	private static List<JsonNode> getEmbedded(JsonNode node, String rel) {
+		JsonNode embedded = node.path("_embedded").path(rel);
+		if (embedded.isMissingNode() || embedded.isNull()) {
+			return Collections.emptyList();
+		}
+		List<JsonNode> result = new ArrayList<JsonNode>();
+		if (embedded.isArray()) {
+			for (Iterator<JsonNode> iterator = embedded.elements(); iterator.hasNext();) {
+				result.add(iterator.next());
+			}
+		} else {
+			result.add(embedded);
+		}
+		return result;
+	}
+
+	private static boolean hasLink(JsonNode node, String rel) {
+		return node.path("_links").has(rel);
+	}
+
+	private static String getText(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		return value != null && !value.isNull() ? value.asText() : null;
+	}
+
+	private <T> T convert(JsonNode node, TypeReference<T> type) {
+		return node != null && !node.isNull() ? mapper.<T>convertValue(node, type) : null;
+	}
+
+	/**
+	 * @param requiredParameter query parameter that must be kept on the next page, added if the link lost it
+	 */
+	private static String getNextHref(JsonNode page, String requiredParameter) {
+		JsonNode next = page.path("_links").path("next").path("href");
+		if (!next.isTextual()) {
+			return null;
+		}
+		String href = next.asText();
+		if (requiredParameter != null && !href.contains(requiredParameter)) {
+			href += (href.contains("?") ? "&" : "?") + requiredParameter;
+		}
+		return href;
+	}
+
+	/**
+	 * Only a validation error means that the endpoint does not accept {@code embed} or {@code limit}.
+	 * Other client errors, such as a missing API (404) or missing permissions (403), would fail the link
+	 * traversal just the same, so they are thrown instead of disabling the reader for later exports.
+	 * The caller remembers which of the parameters was rejected.
+	 *
+	 * @return the page, or null if the endpoint rejected the request as invalid
+	 */
+	private JsonNode get(String href, String linkType) throws IOException {
+		try {
+			return getPage(href, linkType);
+		} catch (AmazonServiceException e) {
+			if (e.getStatusCode() != HTTP_BAD_REQUEST || AdaptiveLimiter.isThrottling(e)
+					|| (e.getErrorCode() != null && !BAD_REQUEST.equals(e.getErrorCode()))) {
+				throw e;
+			}
+			LOG.info("API Gateway endpoint " + endpoint + " rejected " + href + " (" + e.getMessage() + "), following links instead");
+			return null;
+		}
+	}
+
+	private JsonNode getPage(final String href, final String linkType) throws IOException {
+		long start = ExportMetrics.start();
+		byte[] body;
+		if (limiter != null || hedger != null) {
+			AdaptiveLimiter.Call<byte[]> call = new AdaptiveLimiter.Call<byte[]>() {
+				@Override
+				public byte[] call() {
+					try {
+						return send(href, linkType);
+					} catch (IOException e) {
+						throw new ReadFailure(e);
+					}
+				}
+			};
+			int maxErrorRetry = clientConfiguration.getMaxErrorRetry() >= 0
+					? clientConfiguration.getMaxErrorRetry() : DEFAULT_MAX_ERROR_RETRY;
+			try {
+				body = hedger != null ? hedger.execute(linkType, metrics, limiter, maxErrorRetry, call)
+						: limiter.execute(linkType, metrics, maxErrorRetry, call);
+			} catch (ReadFailure e) {
+				throw (IOException) e.getCause();
+			}
+		} else {
+			body = send(href, linkType);
+		}
+		if (metrics != null) {
+			metrics.recordRequest(linkType, start, body.length);
+		}
+		return mapper.readTree(body);
+	}
+
+	/**
+	 * Sends a signed GET request and returns the response body.
+	 * Every attempt, including retries and hedges, is a span of the trace.
+	 *
+	 * @throws AmazonServiceException for error responses, so that throttling is retried by the limiter
+	 */
+	private byte[] send(String href, String linkType) throws IOException {
+		int queryStart = href.indexOf('?');
+		String path = queryStart >= 0 ? href.substring(0, queryStart) : href;
+		Map<String, String> parameters = parseQuery(queryStart >= 0 ? href.substring(queryStart + 1) : null);
+
+		DefaultRequest<Void> request = new DefaultRequest<Void>(SERVICE_NAME);
+		request.setHttpMethod(HttpMethodName.GET);
+		request.setEndpoint(URI.create(endpoint));
+		request.setResourcePath(path);
+		StringBuilder query = new StringBuilder();
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			request.addParameter(parameter.getKey(), parameter.getValue());
+			query.append(query.length() > 0 ? "&" : "?")
+					.append(encode(parameter.getKey())).append('=').append(encode(parameter.getValue()));
+		}
+		request.addHeader("Accept", ACCEPT);
+		AWS4Signer signer = new AWS4Signer();
+		signer.setServiceName(SERVICE_NAME);
+		signer.setRegionName(region);
+		signer.sign(request, credsProvider.getCredentials());
+
+		long start = ExportMetrics.start();
+		int status = 0;
+		long bytes = 0;
+		try {
+			HttpURLConnection connection = openConnection(new URL(endpoint + path + query));
+			connection.setConnectTimeout(clientConfiguration.getConnectionTimeout());
+			connection.setReadTimeout(clientConfiguration.getSocketTimeout());
+			if (clientConfiguration.getUserAgent() != null) {
+				connection.setRequestProperty("User-Agent", clientConfiguration.getUserAgent());
+			}
+			for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+				//The connection sets the host header itself, to the same value
+				if (!"Host".equalsIgnoreCase(header.getKey())) {
+					connection.setRequestProperty(header.getKey(), header.getValue());
+				}
+			}
+			status = connection.getResponseCode();
+			if (status >= 400) {
+				byte[] error = read(connection.getErrorStream());
+				bytes = error.length;
+				AmazonServiceException e = new AmazonServiceException(getErrorMessage(error, status));
+				e.setStatusCode(status);
+				e.setErrorCode(getErrorType(connection.getHeaderField("x-amzn-ErrorType")));
+				e.setServiceName(SERVICE_NAME);
+				throw e;
+			}
+			byte[] body = read(connection.getInputStream());
+			bytes = body.length;
+			return body;
+		} finally {
+			if (metrics != null) {
+				metrics.traceRequest(linkType, start, path, HttpMethodName.GET.name(), status, bytes);
+			}
+		}
+	}
+
+	/**
+	 * Connects through the proxy of the client configuration, if it has one, and otherwise as the JVM does.
+	 */
+	private HttpURLConnection openConnection(URL url) throws IOException {
+		String proxyHost = clientConfiguration.getProxyHost();
+		if (proxyHost == null) {
+			return (HttpURLConnection) url.openConnection();
+		}
+		int proxyPort = clientConfiguration.getProxyPort() > 0 ? clientConfiguration.getProxyPort() : DEFAULT_PROXY_PORT;
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection(
+				new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort)));
+		String proxyUsername = clientConfiguration.getProxyUsername();
+		if (proxyUsername != null) {
+			String proxyPassword = clientConfiguration.getProxyPassword();
+			String userPassword = proxyUsername + ":" + (proxyPassword != null ? proxyPassword : "");
+			connection.setRequestProperty("Proxy-Authorization",
+					"Basic " + Base64.getEncoder().encodeToString(userPassword.getBytes("UTF-8")));
+		}
+		return connection;
+	}
+
+	private String getErrorMessage(byte[] error, int status) {
+		try {
+			String message = getText(mapper.readTree(error), "message");
+			if (message != null) {
+				return message;
+			}
+		} catch (IOException e) {
+			//Not a JSON error response
+		}
+		return "HTTP status " + status;
+	}
+
+	/**
+	 * The error type header may carry a suffix, for example {@code TooManyRequestsException:http://...}.
+	 */
+	private static String getErrorType(String header) {
+		if (header == null) {
+			return null;
+		}
+		int colon = header.indexOf(':');
+		return colon >= 0 ? header.substring(0, colon) : header;
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (in == null) {
+			return out.toByteArray();
+		}
+		try {
+			byte[] buffer = new byte[8192];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		if (query != null && !query.isEmpty()) {
+			for (String pair : query.split("&")) {
+				int eq = pair.indexOf('=');
+				String name = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, "UTF-8");
+				result.put(name, eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), "UTF-8") : "");
+			}
+		}
+		return result;
+	}
+
+	private static String encode(String value) throws UnsupportedEncodingException {
+		return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+	}
+
+	/**
+	 * Carries an IOException through {@link AdaptiveLimiter.Call}, which cannot throw checked exceptions.
+	 */
+	private static class ReadFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ReadFailure(IOException cause) {
+			super(cause);
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.swagger.util.Json;
+
+/**
+ * Thread-safe collector of export costs: the time spent in each phase, and the count, latency,
+ * payload size, retries, hedges and cache hits of the HAL requests by link type, and the size and serialization
+ * time of the documents written in each output format.
+ * One instance can be shared by all exports of a run; the report is written as JSON.
+ * With an {@link ExportTrace} attached, phases and requests are also recorded as spans of a timeline.
+ * <p>
+ * The HAL client fetches links lazily, so a request sample covers one traversal step
+ * (a page of resources or models, a method, an integration) together with its embedded responses.
+ * Bytes are the size of the response bodies, which only requests sent directly, such as embedded pages,
+ * can measure. Steps of the HAL client record serialized bytes instead: the size of the fetched data
+ * serialized again as JSON, without the HAL links and envelope, see {@link #sizeOf(Object)}.
+ * Neither is measured for the REST API lookup itself.
+ */
+public class ExportMetrics {
+
+	public static final String PHASE_CREDENTIALS = "credentials";
+	public static final String PHASE_FINGERPRINT = "fingerprint";
+	public static final String PHASE_FETCH = "fetch";
+	public static final String PHASE_PARSE_MODELS = "parseModels";
+	public static final String PHASE_TRANSFORM = "transform";
+	public static final String PHASE_SERIALIZE = "serialize";
+	public static final String PHASE_STREAM = "stream";
+	public static final String PHASE_SNAPSHOT_READ = "snapshotRead";
+	public static final String PHASE_SNAPSHOT_WRITE = "snapshotWrite";
+
+	public static final String LINK_RESTAPI = "restapi";
+	public static final String LINK_RESOURCES = "resources";
+	public static final String LINK_METHODS = "methods";
+	public static final String LINK_INTEGRATIONS = "integrations";
+	public static final String LINK_MODELS = "models";
+
+	private final long startMillis = System.currentTimeMillis();
+	private final long startNanos = System.nanoTime();
+	private final ConcurrentMap<String, LatencyHistogram> phases = new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ConcurrentMap<String, RequestStats> requests = new ConcurrentHashMap<String, RequestStats>();
+	private final ConcurrentMap<String, OutputStats> outputs = new ConcurrentHashMap<String, OutputStats>();
+	private volatile ExportTrace trace;
+
+	/**
+	 * Returns the start time to pass to the record methods.
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Attaches a timeline that receives a span for every phase and request, null to record aggregates only.
+	 */
+	public void setTrace(ExportTrace trace) {
+		this.trace = trace;
+	}
+
+	public ExportTrace getTrace() {
+		return trace;
+	}
+
+	public void recordPhase(String phase, long startNanos) {
+		getHistogram(phase).record(System.nanoTime() - startNanos);
+		ExportTrace trace = this.trace;
+		if (trace != null) {
+			trace.addSpan(ExportTrace.CATEGORY_PHASE, phase, startNanos, null);
+		}
+	}
+
+	/**
+	 * @param bytes size of the response body, -1 if it is not known
+	 */
+	public void recordRequest(String linkType, long startNanos, long bytes) {
+		recordRequest(linkType, startNanos, bytes, -1);
+	}
+
+	/**
+	 * @param bytes size of the response body, -1 if it is not known
+	 * @param serializedBytes size of the fetched data serialized as JSON, -1 if it is not known
+	 */
+	public void recordRequest(String linkType, long startNanos, long bytes, long serializedBytes) {
+		RequestStats stats = getRequestStats(linkType);
+		stats.latency.record(System.nanoTime() - startNanos);
+		if (bytes >= 0) {
+			stats.bytes.addAndGet(bytes);
+		}
+		if (serializedBytes >= 0) {
+			stats.serializedBytes.addAndGet(serializedBytes);
+		}
+	}
+
+	/**
+	 * Adds a span of a single HAL request to the trace, if one is attached. The aggregates are recorded
+	 * separately with {@link #recordRequest(String, long, long)}, once per traversal step.
+	 *
+	 * @param path resource path, or request path for requests sent directly, may be null for pages of a list
+	 * @param httpMethod HTTP method of the API method the request reads, or of the request itself, may be null
+	 * @param status HTTP status, 0 if the request failed without a response
+	 * @param bytes size of the response, -1 if it is not known
+	 */
+	public void traceRequest(String linkType, long startNanos, String path, String httpMethod, int status, long bytes) {
+		traceRequest(linkType, startNanos, path, httpMethod, status, bytes, -1);
+	}
+
+	/**
+	 * Like {@link #traceRequest(String, long, String, String, int, long)}, for a traversal step of the HAL client.
+	 *
+	 * @param serializedBytes size of the fetched data serialized as JSON, -1 if it is not known
+	 */
+	public void traceRequest(String linkType, long startNanos, String path, String httpMethod, int status, long bytes,
+			long serializedBytes) {
+		ExportTrace trace = this.trace;
+		if (trace != null) {
+			String name = httpMethod != null && path != null ? httpMethod + " " + path : path != null ? path : linkType;
+			trace.addSpan(ExportTrace.CATEGORY_REQUEST, name, startNanos, ExportTrace.args("linkType", linkType,
+					"path", path, "httpMethod", httpMethod, "status", status, "bytes", bytes >= 0 ? bytes : null,
+					"serializedBytes", serializedBytes >= 0 ? serializedBytes : null));
+		}
+	}
+
+	public void recordRetry(String linkType) {
+		getRequestStats(linkType).retries.incrementAndGet();
+		addInstant("retry", linkType);
+	}
+
+	/**
+	 * Records a duplicate request sent by a {@link RequestHedger}.
+	 */
+	public void recordHedge(String linkType) {
+		getRequestStats(linkType).hedges.incrementAndGet();
+		addInstant("hedge", linkType);
+	}
+
+	/**
+	 * Records a hedged request whose duplicate responded first.
+	 */
+	public void recordHedgeWin(String linkType) {
+		getRequestStats(linkType).hedgeWins.incrementAndGet();
+		addInstant("hedgeWin", linkType);
+	}
+
+	public void recordCacheHit(String linkType) {
+		getRequestStats(linkType).cacheHits.incrementAndGet();
+	}
+
+	/**
+	 * Records a document written in the format, from the start of its serialization until it was flushed,
+	 * including the compression, and the number of bytes written.
+	 */
+	public void recordOutput(String format, long startNanos, long bytes) {
+		OutputStats stats = outputs.get(format);
+		if (stats == null) {
+			OutputStats newStats = new OutputStats();
+			stats = outputs.putIfAbsent(format, newStats);
+			if (stats == null) {
+				stats = newStats;
+			}
+		}
+		stats.latency.record(System.nanoTime() - startNanos);
+		stats.bytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Size of a fetched value serialized as JSON, without keeping the serialized bytes. This is not the size
+	 * of the HAL response, which also has links, an envelope and its own formatting.
+	 */
+	public static long sizeOf(Object value) {
+		CountingOutputStream out = new CountingOutputStream(null);
+		try {
+			Json.mapper().writeValue(out, value);
+		} catch (IOException e) {
+			return 0;
+		}
+		return out.count;
+	}
+
+	public Map<String, Object> getReport() {
+		Map<String, Object> report = new LinkedHashMap<String, Object>();
+		report.put("started", startMillis);
+		report.put("durationMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+		Map<String, Object> phaseReport = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(phases).entrySet()) {
+			phaseReport.put(entry.getKey(), entry.getValue().getReport());
+		}
+		report.put("phases", phaseReport);
+		Map<String, Object> requestReport = new LinkedHashMap<String, Object>();
+		long totalCount = 0;
+		long totalBytes = 0;
+		long totalSerializedBytes = 0;
+		long totalRetries = 0;
+		long totalHedges = 0;
+		long totalHedgeWins = 0;
+		for (Map.Entry<String, RequestStats> entry : new TreeMap<String, RequestStats>(requests).entrySet()) {
+			RequestStats stats = entry.getValue();
+			Map<String, Object> statsReport = new LinkedHashMap<String, Object>();
+			statsReport.put("count", stats.latency.count.get());
+			statsReport.put("bytes", stats.bytes.get());
+			statsReport.put("serializedBytes", stats.serializedBytes.get());
+			statsReport.put("retries", stats.retries.get());
+			statsReport.put("cacheHits", stats.cacheHits.get());
+			statsReport.put("hedges", stats.hedges.get());
+			statsReport.put("hedgeWins", stats.hedgeWins.get());
+			statsReport.put("latency", stats.latency.getReport());
+			requestReport.put(entry.getKey(), statsReport);
+			totalCount += stats.latency.count.get();
+			totalBytes += stats.bytes.get();
+			totalSerializedBytes += stats.serializedBytes.get();
+			totalRetries += stats.retries.get();
+			totalHedges += stats.hedges.get();
+			totalHedgeWins += stats.hedgeWins.get();
+		}
+		Map<String, Object> totals = new LinkedHashMap<String, Object>();
+		totals.put("count", totalCount);
+		totals.put("bytes", totalBytes);
+		totals.put("serializedBytes", totalSerializedBytes);
+		totals.put("retries", totalRetries);
+		totals.put("hedges", totalHedges);
+		totals.put("hedgeWins", totalHedgeWins);
+		report.put("requestTotals", totals);
+		report.put("requests", requestReport);
+		Map<String, Object> outputReport = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, OutputStats> entry : new TreeMap<String, OutputStats>(outputs).entrySet()) {
+			OutputStats stats = entry.getValue();
+			long count = stats.latency.count.get();
+			Map<String, Object> statsReport = new LinkedHashMap<String, Object>();
+			statsReport.put("count", count);
+			statsReport.put("bytes", stats.bytes.get());
+			statsReport.put("meanBytes", count > 0 ? stats.bytes.get() / count : 0);
+			statsReport.put("serialization", stats.latency.getReport());
+			outputReport.put(entry.getKey(), statsReport);
+		}
+		report.put("outputs", outputReport);
+		Map<String, Object> modelSchemaCache = new LinkedHashMap<String, Object>();
+		modelSchemaCache.put("hits", ModelSchemaCache.getShared().getHitCount());
+		modelSchemaCache.put("misses", ModelSchemaCache.getShared().getMissCount());
+		report.put("modelSchemaCache", modelSchemaCache);
+		return report;
+	}
+
+	public void write(File file) throws IOException {
+		Json.pretty().writeValue(file, getReport());
+	}
+
+	private void addInstant(String name, String linkType) {
+		ExportTrace trace = this.trace;
+		if (trace != null) {
+			trace.addInstant(ExportTrace.CATEGORY_REQUEST, name, ExportTrace.args("linkType", linkType));
+		}
+	}
+
+	private LatencyHistogram getHistogram(String phase) {
+		LatencyHistogram histogram = phases.get(phase);
+		if (histogram == null) {
+			LatencyHistogram newHistogram = new LatencyHistogram();
+			histogram = phases.putIfAbsent(phase, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	private RequestStats getRequestStats(String linkType) {
+		RequestStats stats = requests.get(linkType);
+		if (stats == null) {
+			RequestStats newStats = new RequestStats();
+			stats = requests.putIfAbsent(linkType, newStats);
+			if (stats == null) {
+				stats = newStats;
+			}
+		}
+		return stats;
+	}
+
+	private static class RequestStats {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong serializedBytes = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final AtomicLong cacheHits = new AtomicLong();
+		private final AtomicLong hedges = new AtomicLong();
+		private final AtomicLong hedgeWins = new AtomicLong();
+	}
+
+	private static class OutputStats {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final AtomicLong bytes = new AtomicLong();
+	}
+
+	/**
+	 * Histogram with power of two microsecond buckets: bucket i counts samples below 2^i microseconds.
+	 * Percentiles are reported as the upper bound of their bucket.
+	 */
+	static class LatencyHistogram {
+		private static final int BUCKETS = 40;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long nanos) {
+			long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+			int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+			buckets.incrementAndGet(bucket);
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		Map<String, Object> getReport() {
+			long n = count.get();
+			Map<String, Object> report = new LinkedHashMap<String, Object>();
+			report.put("count", n);
+			report.put("totalMillis", toMillis(totalNanos.get()));
+			report.put("meanMillis", n > 0 ? toMillis(totalNanos.get() / n) : 0.0);
+			report.put("maxMillis", toMillis(maxNanos.get()));
+			report.put("p50Millis", getPercentileMillis(n, 0.50));
+			report.put("p90Millis", getPercentileMillis(n, 0.90));
+			report.put("p99Millis", getPercentileMillis(n, 0.99));
+			Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+			for (int i = 0; i < BUCKETS; i++) {
+				long bucketCount = buckets.get(i);
+				if (bucketCount > 0) {
+					histogram.put("<" + getUpperBoundMicros(i) + "us", bucketCount);
+				}
+			}
+			report.put("histogram", histogram);
+			return report;
+		}
+
+		private double getPercentileMillis(long n, double percentile) {
+			if (n == 0) {
+				return 0.0;
+			}
+			long rank = (long) Math.ceil(n * percentile);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min(getUpperBoundMicros(i) / 1000.0, toMillis(maxNanos.get()));
+				}
+			}
+			return toMillis(maxNanos.get());
+		}
+
+		private static long getUpperBoundMicros(int bucket) {
+			return 1L << bucket;
+		}
+
+		private static double toMillis(long nanos) {
+			return nanos / 1000000.0;
+		}
+	}
+
+	/**
+	 * Counts the bytes written to the target, or discards them if the target is null.
+	 */
+	static class CountingOutputStream extends OutputStream {
+		private final OutputStream out;
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (out != null) {
+				out.write(b);
+			}
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (out != null) {
+				out.write(b, off, len);
+			}
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (out != null) {
+				out.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+/**
+ * Options of one export with {@link APIGExporter#exportAsync(String, ExportOptions)}.
+ * Start from {@link APIGExporter#newOptions()} to inherit the settings of the exporter,
+ * or from a new instance for the defaults: YAML, schemas inlined, all paths, in API Gateway order.
+ * <p>
+ * Options are not thread-safe, but are copied when the export starts, so one instance can be changed
+ * and reused for the next export.
+ */
+public class ExportOptions {
+
+	private OutputFormat format = OutputFormat.YAML;
+	private boolean inlineBodyParameterSchema = true;
+	private boolean inlineResponseSchema = true;
+	private boolean canonical;
+	private boolean streaming;
+	private boolean refresh;
+	private PathFilter pathFilter;
+	private OutputStream sink;
+	private Executor executor;
+
+	public ExportOptions() {
+	}
+
+	ExportOptions(ExportOptions options) {
+		this.format = options.format;
+		this.inlineBodyParameterSchema = options.inlineBodyParameterSchema;
+		this.inlineResponseSchema = options.inlineResponseSchema;
+		this.canonical = options.canonical;
+		this.streaming = options.streaming;
+		this.refresh = options.refresh;
+		this.pathFilter = options.pathFilter;
+		this.sink = options.sink;
+		this.executor = options.executor;
+	}
+
+	public OutputFormat getFormat() {
+		return format;
+	}
+
+	public ExportOptions withFormat(OutputFormat format) {
+		this.format = format;
+		return this;
+	}
+
+	public boolean isInlineBodyParameterSchema() {
+		return inlineBodyParameterSchema;
+	}
+
+	/**
+	 * Inlines request models that are not referenced by other models.
+	 */
+	public ExportOptions withInlineBodyParameterSchema(boolean inlineBodyParameterSchema) {
+		this.inlineBodyParameterSchema = inlineBodyParameterSchema;
+		return this;
+	}
+
+	public boolean isInlineResponseSchema() {
+		return inlineResponseSchema;
+	}
+
+	/**
+	 * Inlines empty response models of a primitive type that are not referenced by other models.
+	 */
+	public ExportOptions withInlineResponseSchema(boolean inlineResponseSchema) {
+		this.inlineResponseSchema = inlineResponseSchema;
+		return this;
+	}
+
+	public boolean isCanonical() {
+		return canonical;
+	}
+
+	/**
+	 * See {@link SwaggerTransformer#setCanonical(boolean)}.
+	 */
+	public ExportOptions withCanonical(boolean canonical) {
+		this.canonical = canonical;
+		return this;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Fetches and writes the API resource by resource, see {@link APIGExporter#exportStreaming}.
+	 */
+	public ExportOptions withStreaming(boolean streaming) {
+		this.streaming = streaming;
+		return this;
+	}
+
+	public boolean isRefresh() {
+		return refresh;
+	}
+
+	/**
+	 * Ignores cached responses and replaces them with freshly fetched ones.
+	 */
+	public ExportOptions withRefresh(boolean refresh) {
+		this.refresh = refresh;
+		return this;
+	}
+
+	public PathFilter getPathFilter() {
+		return pathFilter;
+	}
+
+	/**
+	 * Exports only the resources whose path matches the filter, null to export all resources.
+	 */
+	public ExportOptions withPathFilter(PathFilter pathFilter) {
+		this.pathFilter = pathFilter;
+		return this;
+	}
+
+	public OutputStream getSink() {
+		return sink;
+	}
+
+	/**
+	 * Stream the document is written to, flushed but not closed. Required.
+	 */
+	public ExportOptions withSink(OutputStream sink) {
+		this.sink = sink;
+		return this;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Executor of the fetch, transformation and serialization steps, null for a shared pool of daemon threads,
+	 * one per processor. Pass an executor sized for the number of exports that should run at once.
+	 * Each step blocks a thread of the executor while it runs, but no thread waits between the steps.
+	 */
+	public ExportOptions withExecutor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+}
@@ -0,0 +1,254 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.amazonaws.AmazonServiceException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.swagger.models.Swagger;
+import io.swagger.util.Json;
+
+/**
+ * Long-running export service: {@code GET /apis/{id}?format=yaml&region=us-east-1[&refresh=true]}.
+ * Exporters, and with them the API Gateway clients, connection pools and credentials, are created once
+ * per region and reused. Generated documents are kept in a {@link DocumentCache}, and concurrent requests
+ * for the same API wait for a single export instead of starting their own. The exporters do not use a
+ * {@link HalResponseCache}, so a document is never older than the time to live of the document cache.
+ */
+public class ExportServer {
+
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_THREADS = 16;
+
+	private static final Log LOG = LogFactory.getLog(ExportServer.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Pattern REGION_PATTERN = Pattern.compile("[a-z]{2}(-[a-z]+)+-\\d");
+	private static final Pattern API_ID_PATTERN = Pattern.compile("[A-Za-z0-9]+");
+
+	/**
+	 * Creates the exporter of a region, called once per region.
+	 */
+	public interface ExporterFactory {
+		APIGExporter create(String region);
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ExporterFactory exporterFactory;
+	private final String defaultRegion;
+	private final DocumentCache documentCache;
+	private final Map<String, APIGExporter> exporters = new HashMap<String, APIGExporter>();
+	private final ConcurrentMap<String, FutureTask<Swagger>> inFlight = new ConcurrentHashMap<String, FutureTask<Swagger>>();
+	private final AtomicLong cacheHitCount = new AtomicLong();
+	private final AtomicLong exportCount = new AtomicLong();
+	private final AtomicLong joinedCount = new AtomicLong();
+	private ExportMetrics metrics;
+
+	/**
+	 * @param threads number of requests served in parallel
+	 */
+	public ExportServer(int port, int threads, ExporterFactory exporterFactory, String defaultRegion,
+			DocumentCache documentCache) throws IOException {
+		this.exporterFactory = exporterFactory;
+		this.defaultRegion = defaultRegion;
+		this.documentCache = documentCache;
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				ExportServer.this.handle(exchange);
+			}
+		});
+		executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Serves the metrics report at {@code GET /metrics}, null to disable the endpoint.
+	 */
+	public void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Creates the exporter of the default region, so that the first request does not pay for it.
+	 */
+	public void start() {
+		getExporter(defaultRegion);
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public String getEndpoint() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				sendError(exchange, 405, "Only GET is supported");
+				return;
+			}
+			URI uri = exchange.getRequestURI();
+			String[] parts = uri.getPath().split("/");
+			if (parts.length == 2 && "health".equals(parts[1])) {
+				sendJson(exchange, 200, getHealth());
+			} else if (parts.length == 2 && "metrics".equals(parts[1]) && metrics != null) {
+				sendJson(exchange, 200, metrics.getReport());
+			} else if (parts.length == 3 && "apis".equals(parts[1])) {
+				serveApi(exchange, parts[2], parseQuery(uri.getRawQuery()));
+			} else {
+				sendError(exchange, 404, "Not found: " + uri.getPath());
+			}
+		} catch (AmazonServiceException e) {
+			int status = e.getStatusCode() >= 400 && e.getStatusCode() < 500 ? e.getStatusCode() : 502;
+			sendError(exchange, status, String.valueOf(e.getMessage()));
+		} catch (Exception e) {
+			LOG.error("Error serving " + exchange.getRequestURI(), e);
+			sendError(exchange, 500, String.valueOf(e.getMessage()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void serveApi(HttpExchange exchange, String restApiId, Map<String, String> query) throws IOException {
+		String formatName = query.containsKey("format") ? query.get("format") : OutputFormat.YAML.getName();
+		OutputFormat format = OutputFormat.fromName(formatName);
+		if (format == null) {
+			sendError(exchange, 400, "Unsupported format " + formatName);
+			return;
+		}
+		String region = query.containsKey("region") ? query.get("region") : defaultRegion;
+		if (!REGION_PATTERN.matcher(region).matches() || !API_ID_PATTERN.matcher(restApiId).matches()) {
+			sendError(exchange, 400, "Invalid region or API id");
+			return;
+		}
+		boolean refresh = "true".equals(query.get("refresh"));
+
+		String key = DocumentCache.getKey(region, restApiId, format);
+		byte[] document = refresh ? null : documentCache.get(key);
+		if (document != null) {
+			cacheHitCount.incrementAndGet();
+			exchange.getResponseHeaders().set("X-Cache", "HIT");
+		} else {
+			APIGExporter exporter = getExporter(region);
+			Swagger swagger = getSwagger(exporter, region, restApiId, refresh);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			exporter.write(swagger, format, out);
+			document = out.toByteArray();
+			documentCache.put(key, document);
+			exchange.getResponseHeaders().set("X-Cache", "MISS");
+		}
+		send(exchange, 200, format.getContentType(), document);
+	}
+
+	/**
+	 * Exports the API, or waits for the export that another request already started.
+	 */
+	private Swagger getSwagger(final APIGExporter exporter, String region, final String restApiId, final boolean refresh)
+			throws IOException {
+		//A refresh must not join an export that may read cached data
+		String key = region + "/" + restApiId + (refresh ? "?refresh" : "");
+		FutureTask<Swagger> task = new FutureTask<Swagger>(new Callable<Swagger>() {
+			@Override
+			public Swagger call() throws IOException {
+				return exporter.exportSwagger(restApiId, refresh);
+			}
+		});
+		FutureTask<Swagger> existing = inFlight.putIfAbsent(key, task);
+		if (existing != null) {
+			joinedCount.incrementAndGet();
+			return ApiFetcher.await(existing);
+		}
+		try {
+			exportCount.incrementAndGet();
+			task.run();
+		} finally {
+			inFlight.remove(key, task);
+		}
+		return ApiFetcher.await(task);
+	}
+
+	private synchronized APIGExporter getExporter(String region) {
+		APIGExporter exporter = exporters.get(region);
+		if (exporter == null) {
+			exporter = exporterFactory.create(region);
+			exporter.setResponseCache(null);
+			exporters.put(region, exporter);
+		}
+		return exporter;
+	}
+
+	private Map<String, Object> getHealth() {
+		Map<String, Object> health = new LinkedHashMap<String, Object>();
+		health.put("status", "ok");
+		synchronized (this) {
+			health.put("regions", new TreeSet<String>(exporters.keySet()));
+		}
+		health.put("exports", exportCount.get());
+		health.put("joinedExports", joinedCount.get());
+		health.put("cacheHits", cacheHitCount.get());
+		health.put("cachedDocuments", documentCache.size());
+		health.put("cachedBytes", documentCache.getTotalBytes());
+		return health;
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		if (rawQuery == null || rawQuery.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<String, String> result = new HashMap<String, String>();
+		for (String pair : rawQuery.split("&")) {
+			int i = pair.indexOf('=');
+			String name = URLDecoder.decode(i >= 0 ? pair.substring(0, i) : pair, "UTF-8");
+			String value = i >= 0 ? URLDecoder.decode(pair.substring(i + 1), "UTF-8") : "";
+			result.put(name, value);
+		}
+		return result;
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		sendJson(exchange, status, Collections.singletonMap("message", message));
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+		send(exchange, status, "application/json", Json.pretty().writeValueAsString(body).getBytes(UTF_8));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+}
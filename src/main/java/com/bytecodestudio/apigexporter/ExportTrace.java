@@ -0,0 +1,195 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Thread-safe timeline of an export run: a span for every phase and every HAL request, on the thread
+ * that ran it, and instant events for retries and hedges. Unlike {@link ExportMetrics}, which aggregates,
+ * the timeline shows why a particular export was slow, for example a serial chain of resource pages
+ * or a single slow integration.
+ * <p>
+ * The trace is written in the Chrome trace-event format, which trace viewers such as Perfetto
+ * ({@code https://ui.perfetto.dev}) or {@code chrome://tracing} open directly. Request spans carry
+ * the link type, the resource path, the HTTP method, the status and the bytes received, or for steps of the
+ * HAL client the serialized bytes, see {@link ExportMetrics}.
+ * <p>
+ * Attach a trace with {@link ExportMetrics#setTrace(ExportTrace)}; everything that records metrics then also
+ * records spans. At most {@link #MAX_EVENTS} events are kept, later events are counted but dropped.
+ */
+public class ExportTrace {
+
+	public static final String CATEGORY_PHASE = "phase";
+	public static final String CATEGORY_REQUEST = "request";
+
+	static final int MAX_EVENTS = 1000000;
+
+	private static final int PID = 1;
+
+	private final long startNanos = System.nanoTime();
+	private final long startMillis = System.currentTimeMillis();
+	private final Queue<Event> events = new ConcurrentLinkedQueue<Event>();
+	private final AtomicInteger eventCount = new AtomicInteger();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final ConcurrentMap<Long, String> threadNames = new ConcurrentHashMap<Long, String>();
+
+	/**
+	 * Adds a span from the start time until now, on the current thread.
+	 *
+	 * @param startNanos as returned by {@link ExportMetrics#start()}
+	 * @param args details shown with the span, may be null
+	 */
+	public void addSpan(String category, String name, long startNanos, Map<String, Object> args) {
+		add(new Event(category, name, 'X', startNanos, System.nanoTime() - startNanos, args));
+	}
+
+	/**
+	 * Adds an event without duration at the current time, on the current thread.
+	 */
+	public void addInstant(String category, String name, Map<String, Object> args) {
+		add(new Event(category, name, 'i', System.nanoTime(), 0, args));
+	}
+
+	public int getEventCount() {
+		return Math.min(eventCount.get(), MAX_EVENTS);
+	}
+
+	/**
+	 * Number of events dropped after the trace was full.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Writes the events recorded so far, streaming, so a large trace is not held twice in memory.
+	 */
+	public void write(File file) throws IOException {
+		JsonGenerator generator = new JsonFactory().createGenerator(file, JsonEncoding.UTF8);
+		try {
+			generator.writeStartObject();
+			generator.writeStringField("displayTimeUnit", "ms");
+			generator.writeArrayFieldStart("traceEvents");
+			writeMetadata(generator, "process_name", 0, "aws-api-export");
+			for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+				writeMetadata(generator, "thread_name", thread.getKey(), thread.getValue());
+			}
+			for (Event event : events) {
+				writeEvent(generator, event);
+			}
+			generator.writeEndArray();
+			generator.writeObjectFieldStart("otherData");
+			generator.writeNumberField("started", startMillis);
+			generator.writeNumberField("droppedEvents", droppedCount.get());
+			generator.writeEndObject();
+			generator.writeEndObject();
+		} finally {
+			generator.close();
+		}
+	}
+
+	/**
+	 * Arguments of a span, in insertion order, without null values.
+	 */
+	static Map<String, Object> args(Object... keysAndValues) {
+		Map<String, Object> args = new LinkedHashMap<String, Object>();
+		for (int i = 0; i + 1 < keysAndValues.length; i += 2) {
+			if (keysAndValues[i + 1] != null) {
+				args.put((String) keysAndValues[i], keysAndValues[i + 1]);
+			}
+		}
+		return args;
+	}
+
+	private void add(Event event) {
+		if (eventCount.incrementAndGet() > MAX_EVENTS) {
+			eventCount.decrementAndGet();
+			droppedCount.incrementAndGet();
+			return;
+		}
+		if (!threadNames.containsKey(event.threadId)) {
+			threadNames.putIfAbsent(event.threadId, Thread.currentThread().getName());
+		}
+		events.add(event);
+	}
+
+	private void writeEvent(JsonGenerator generator, Event event) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("name", event.name);
+		generator.writeStringField("cat", event.category);
+		generator.writeStringField("ph", String.valueOf(event.phase));
+		generator.writeNumberField("ts", toMicros(event.startNanos - startNanos));
+		if (event.phase == 'X') {
+			generator.writeNumberField("dur", toMicros(event.durationNanos));
+		} else {
+			//Instant events are drawn on their thread only
+			generator.writeStringField("s", "t");
+		}
+		generator.writeNumberField("pid", PID);
+		generator.writeNumberField("tid", event.threadId);
+		if (event.args != null && !event.args.isEmpty()) {
+			generator.writeObjectFieldStart("args");
+			for (Map.Entry<String, Object> arg : event.args.entrySet()) {
+				Object value = arg.getValue();
+				if (value instanceof Number) {
+					generator.writeNumberField(arg.getKey(), ((Number) value).longValue());
+				} else {
+					generator.writeStringField(arg.getKey(), String.valueOf(value));
+				}
+			}
+			generator.writeEndObject();
+		}
+		generator.writeEndObject();
+	}
+
+	private static void writeMetadata(JsonGenerator generator, String name, long threadId, String value) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("name", name);
+		generator.writeStringField("ph", "M");
+		generator.writeNumberField("pid", PID);
+		generator.writeNumberField("tid", threadId);
+		generator.writeObjectFieldStart("args");
+		generator.writeStringField("name", value);
+		generator.writeEndObject();
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Trace timestamps are microseconds, fractions keep spans of fast requests from collapsing to zero.
+	 */
+	private static double toMicros(long nanos) {
+		return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+	}
+
+	private static class Event {
+		private final String category;
+		private final String name;
+		private final char phase;
+		private final long startNanos;
+		private final long durationNanos;
+		private final long threadId = Thread.currentThread().getId();
+		private final Map<String, Object> args;
+
+		Event(String category, String name, char phase, long startNanos, long durationNanos, Map<String, Object> args) {
+			this.category = category;
+			this.name = name;
+			this.phase = phase;
+			this.startNanos = startNanos;
+			this.durationNanos = durationNanos;
+			this.args = args;
+		}
+	}
+}
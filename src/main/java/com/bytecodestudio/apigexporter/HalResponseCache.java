@@ -0,0 +1,146 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * On-disk cache of fetched API Gateway HAL responses, keyed by the URL of the HAL link.
+ * Entries expire after a fixed TTL; when the cache grows beyond its size limit the least
+ * recently used entries are evicted. Access time is tracked through the file modification time.
+ */
+public class HalResponseCache {
+
+	public static final long DEFAULT_TTL_MILLIS = 15 * 60 * 1000L;
+	public static final long DEFAULT_MAX_BYTES = 256 * 1024 * 1024L;
+
+	private static final Log LOG = LogFactory.getLog(HalResponseCache.class);
+	private static final String SUFFIX = ".json";
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final File directory;
+	private final long ttlMillis;
+	private final long maxBytes;
+
+	public HalResponseCache(File directory, long ttlMillis, long maxBytes) {
+		this.directory = directory;
+		this.ttlMillis = ttlMillis;
+		this.maxBytes = maxBytes;
+	}
+
+	public static File getDefaultDirectory() {
+		return new File(System.getProperty("user.home"), ".aws-api-export/cache");
+	}
+
+	/**
+	 * Returns the cached value for the URL, or null if there is no entry or the entry has expired.
+	 */
+	public <T> T get(String url, TypeReference<T> type) {
+		File file = getFile(url);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			JsonNode entry = mapper.readTree(file);
+			if (!url.equals(entry.path("url").asText())
+					|| System.currentTimeMillis() - entry.path("created").asLong() > ttlMillis) {
+				delete(file);
+				return null;
+			}
+			T value = mapper.convertValue(entry.get("value"), type);
+			file.setLastModified(System.currentTimeMillis());
+			return value;
+		} catch (Exception e) {
+			LOG.debug("Discarding unreadable cache entry " + file, e);
+			delete(file);
+			return null;
+		}
+	}
+
+	public void put(String url, Object value) {
+		Map<String, Object> entry = new LinkedHashMap<String, Object>();
+		entry.put("url", url);
+		entry.put("created", System.currentTimeMillis());
+		entry.put("value", value);
+		File file = getFile(url);
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Could not create cache directory " + directory);
+			}
+			File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+			mapper.writeValue(tmp, entry);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOG.warn("Could not write cache entry for " + url, e);
+		}
+	}
+
+	/**
+	 * Evicts least recently used entries until the cache fits in its size limit.
+	 */
+	public synchronized void trim() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		List<File> entries = new ArrayList<File>();
+		long size = 0;
+		for (File file : files) {
+			if (file.getName().endsWith(SUFFIX)) {
+				entries.add(file);
+				size += file.length();
+			}
+		}
+		if (size <= maxBytes) {
+			return;
+		}
+		Collections.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+		for (File file : entries) {
+			if (size <= maxBytes) {
+				break;
+			}
+			size -= file.length();
+			delete(file);
+		}
+	}
+
+	private File getFile(String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(UTF_8));
+			return new File(directory, ContentHash.toHex(digest) + SUFFIX);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void delete(File file) {
+		if (!file.delete() && file.exists()) {
+			LOG.debug("Could not delete cache entry " + file);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.swagger.models.ArrayModel;
+import io.swagger.models.ComposedModel;
+import io.swagger.models.Model;
+import io.swagger.models.ModelImpl;
+import io.swagger.models.RefModel;
+import io.swagger.models.properties.ArrayProperty;
+import io.swagger.models.properties.MapProperty;
+import io.swagger.models.properties.Property;
+import io.swagger.models.properties.RefProperty;
+
+/**
+ * Counts the references to each definition from the models and their nested properties.
+ * Built in one pass with an explicit stack, so deeply nested schemas cannot overflow the call stack,
+ * and every model or property instance is visited once, so shared or cyclic object graphs terminate.
+ * A model that references itself counts as referenced and is never inlined.
+ */
+class ModelReferenceIndex {
+
+	private final Map<String, int[]> counts = new HashMap<String, int[]>();
+
+	private ModelReferenceIndex() {
+	}
+
+	static ModelReferenceIndex build(Collection<? extends Model> models) {
+		ModelReferenceIndex index = new ModelReferenceIndex();
+		if (models != null) {
+			index.visit(models);
+		}
+		return index;
+	}
+
+	boolean isReferenced(String modelName) {
+		return counts.containsKey(modelName);
+	}
+
+	int getReferenceCount(String modelName) {
+		int[] count = counts.get(modelName);
+		return count != null ? count[0] : 0;
+	}
+
+	private void visit(Collection<? extends Model> models) {
+		Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		Deque<Object> stack = new ArrayDeque<Object>();
+		pushAll(stack, models);
+		while (!stack.isEmpty()) {
+			Object node = stack.pop();
+			if (!visited.add(node)) {
+				continue;
+			}
+			if (node instanceof RefModel) {
+				addReference(((RefModel) node).getSimpleRef());
+			} else if (node instanceof ModelImpl) {
+				pushAll(stack, ((ModelImpl) node).getProperties());
+				push(stack, ((ModelImpl) node).getAdditionalProperties());
+			} else if (node instanceof ArrayModel) {
+				pushAll(stack, ((ArrayModel) node).getProperties());
+				push(stack, ((ArrayModel) node).getItems());
+			} else if (node instanceof ComposedModel) {
+				ComposedModel composed = (ComposedModel) node;
+				pushAll(stack, composed.getProperties());
+				push(stack, composed.getChild());
+				push(stack, composed.getParent());
+				pushAll(stack, composed.getAllOf());
+				pushAll(stack, composed.getInterfaces());
+			} else if (node instanceof RefProperty) {
+				addReference(((RefProperty) node).getSimpleRef());
+			} else if (node instanceof ArrayProperty) {
+				push(stack, ((ArrayProperty) node).getItems());
+			} else if (node instanceof MapProperty) {
+				push(stack, ((MapProperty) node).getAdditionalProperties());
+			}
+		}
+	}
+
+	private void addReference(String modelName) {
+		int[] count = counts.get(modelName);
+		if (count == null) {
+			counts.put(modelName, new int[] {1});
+		} else {
+			count[0]++;
+		}
+	}
+
+	private static void push(Deque<Object> stack, Object node) {
+		if (node != null) {
+			stack.push(node);
+		}
+	}
+
+	private static void pushAll(Deque<Object> stack, Collection<?> nodes) {
+		if (nodes != null) {
+			for (Object node : nodes) {
+				push(stack, node);
+			}
+		}
+	}
+
+	private static void pushAll(Deque<Object> stack, Map<String, Property> properties) {
+		if (properties != null) {
+			pushAll(stack, properties.values());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.swagger.models.AbstractModel;
+import io.swagger.models.Model;
+import io.swagger.models.ModelImpl;
+import io.swagger.models.RefModel;
+import io.swagger.util.Json;
+
+/**
+ * Memoizes parsed model schemas by their text, so that models shared by several APIs or stages are parsed
+ * once per process. A hit costs a lookup of the schema string, whose hash code the string caches, and a copy
+ * of the top level of the model. The cached models are never modified: every call returns a copy,
+ * because the transformation renames models and sets their descriptions. Properties and nested models
+ * are shared between the copies, the transformation only reads them.
+ */
+public class ModelSchemaCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+	private static final ModelSchemaCache SHARED = new ModelSchemaCache(DEFAULT_MAX_ENTRIES);
+
+	private final Map<String, Model> schemas;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * @param maxEntries number of parsed schemas to keep, the least recently used are evicted first
+	 */
+	public ModelSchemaCache(final int maxEntries) {
+		this.schemas = new LinkedHashMap<String, Model>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Model> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * The cache shared by all exports in this process.
+	 */
+	public static ModelSchemaCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Returns a model of the schema that the caller may modify.
+	 */
+	public Model parse(String schema) throws IOException {
+		Model model;
+		synchronized (schemas) {
+			model = schemas.get(schema);
+		}
+		if (model != null) {
+			hitCount.incrementAndGet();
+		} else {
+			missCount.incrementAndGet();
+			model = Json.mapper().readValue(schema, Model.class);
+			synchronized (schemas) {
+				schemas.put(schema, model);
+			}
+		}
+		return copy(model);
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public void clear() {
+		synchronized (schemas) {
+			schemas.clear();
+		}
+	}
+
+	/**
+	 * Copies the top level of a model. The clone methods of the Swagger models leave out some fields,
+	 * depending on the type, which are copied here.
+	 */
+	static Model copy(Model model) {
+		Model copy = (Model) model.clone();
+		copy.setTitle(model.getTitle());
+		if (model instanceof ModelImpl) {
+			((ModelImpl) copy).setFormat(((ModelImpl) model).getFormat());
+		}
+		if (model instanceof RefModel) {
+			((RefModel) copy).setExternalDocs(model.getExternalDocs());
+		} else if (model instanceof AbstractModel) {
+			copy.setReference(model.getReference());
+			for (Map.Entry<String, Object> extension : model.getVendorExtensions().entrySet()) {
+				((AbstractModel) copy).setVendorExtension(extension.getKey(), extension.getValue());
+			}
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,196 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.swagger.util.Json;
+
+/**
+ * Exports the same APIs from several regions concurrently, each region through its own exporter,
+ * with its own pooled client and request limit, so the run takes about as long as the slowest region.
+ * Each region is a {@link BatchExporter} run into a subdirectory named after the region, with its own manifest.
+ * API names are resolved to ids per region, since the same API has a different id in every region.
+ * A summary of all regions is written to {@link #MANIFEST_FILE} in the output directory.
+ */
+public class MultiRegionExporter {
+
+	public static final String MANIFEST_FILE = "regions.json";
+
+	private static final Log LOG = LogFactory.getLog(MultiRegionExporter.class);
+
+	private final ExportServer.ExporterFactory exporterFactory;
+	private final int batchConcurrency;
+	private boolean skipUnchanged;
+	private boolean refresh;
+	private boolean streaming;
+
+	/**
+	 * @param batchConcurrency number of APIs exported in parallel within each region
+	 */
+	public MultiRegionExporter(ExportServer.ExporterFactory exporterFactory, int batchConcurrency) {
+		this.exporterFactory = exporterFactory;
+		this.batchConcurrency = batchConcurrency;
+	}
+
+	/**
+	 * See {@link BatchExporter#setSkipUnchanged(boolean)}.
+	 */
+	public void setSkipUnchanged(boolean skipUnchanged) {
+		this.skipUnchanged = skipUnchanged;
+	}
+
+	/**
+	 * See {@link BatchExporter#setRefresh(boolean)}.
+	 */
+	public void setRefresh(boolean refresh) {
+		this.refresh = refresh;
+	}
+
+	/**
+	 * See {@link BatchExporter#setStreaming(boolean)}.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * @param apiIdsOrNames ids or names of the APIs, null to export all APIs of each region
+	 */
+	public List<RegionResult> export(List<String> regions, final List<String> apiIdsOrNames,
+			final List<OutputFormat> formats, final File outputDir) throws IOException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+			throw new IOException("Could not create output directory " + outputDir);
+		}
+		long start = System.currentTimeMillis();
+		List<Future<RegionResult>> futures = new ArrayList<Future<RegionResult>>();
+		ExecutorService executor = ApiFetcher.newExecutor(regions.size(), false);
+		try {
+			for (final String region : regions) {
+				futures.add(executor.submit(new Callable<RegionResult>() {
+					@Override
+					public RegionResult call() {
+						return export(region, apiIdsOrNames, formats, new File(outputDir, region));
+					}
+				}));
+			}
+			List<RegionResult> results = new ArrayList<RegionResult>();
+			for (Future<RegionResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while exporting regions", e);
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+			}
+			writeManifest(results, System.currentTimeMillis() - start, new File(outputDir, MANIFEST_FILE));
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private RegionResult export(String region, List<String> apiIdsOrNames, List<OutputFormat> formats, File outputDir) {
+		RegionResult result = new RegionResult(region);
+		long start = System.currentTimeMillis();
+		try {
+			APIGExporter exporter = exporterFactory.create(region);
+			List<String> ids = apiIdsOrNames == null ? exporter.getRestApiIds() : exporter.resolveRestApiIds(apiIdsOrNames);
+			BatchExporter batchExporter = new BatchExporter(exporter, batchConcurrency);
+			batchExporter.setSkipUnchanged(skipUnchanged);
+			batchExporter.setRefresh(refresh);
+			batchExporter.setStreaming(streaming);
+			result.results = batchExporter.export(ids, formats, outputDir);
+			LOG.info("Exported " + (result.results.size() - result.getFailedCount()) + " of " + result.results.size()
+					+ " APIs from " + region + " to " + outputDir);
+		} catch (Throwable t) {
+			result.error = t.getMessage() != null ? t.getMessage() : t.toString();
+			LOG.error("Error exporting APIs from " + region, t);
+		}
+		result.durationMillis = System.currentTimeMillis() - start;
+		return result;
+	}
+
+	private static void writeManifest(List<RegionResult> results, long durationMillis, File file) throws IOException {
+		List<Map<String, Object>> regions = new ArrayList<Map<String, Object>>();
+		for (RegionResult result : results) {
+			Map<String, Object> region = new LinkedHashMap<String, Object>();
+			region.put("region", result.region);
+			region.put("status", result.isSuccess() ? "exported" : "failed");
+			region.put("exported", result.results.size() - result.getFailedCount());
+			region.put("failed", result.getFailedCount());
+			region.put("durationMillis", result.durationMillis);
+			if (result.error != null) {
+				region.put("error", result.error);
+			}
+			regions.add(region);
+		}
+		Map<String, Object> manifest = new LinkedHashMap<String, Object>();
+		manifest.put("durationMillis", durationMillis);
+		manifest.put("regions", regions);
+		Json.pretty().writeValue(file, manifest);
+	}
+
+	public static class RegionResult {
+		private final String region;
+		private List<BatchExporter.Result> results = Collections.emptyList();
+		private String error;
+		private long durationMillis;
+
+		RegionResult(String region) {
+			this.region = region;
+		}
+
+		public String getRegion() {
+			return region;
+		}
+
+		/**
+		 * Results of the APIs of the region, empty if the APIs could not be listed or resolved.
+		 */
+		public List<BatchExporter.Result> getResults() {
+			return results;
+		}
+
+		/**
+		 * Error that failed the whole region, null if the APIs were exported, even if some of them failed.
+		 */
+		public String getError() {
+			return error;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		public int getFailedCount() {
+			int failed = 0;
+			for (BatchExporter.Result result : results) {
+				if (!result.isSuccess()) {
+					failed++;
+				}
+			}
+			return failed;
+		}
+
+		/**
+		 * True if all APIs of the region were exported.
+		 */
+		public boolean isSuccess() {
+			return error == null && getFailedCount() == 0;
+		}
+	}
+}
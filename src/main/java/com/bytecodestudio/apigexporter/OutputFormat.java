@@ -0,0 +1,262 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import io.swagger.models.Swagger;
+import io.swagger.util.Json;
+import io.swagger.util.Yaml;
+
+/**
+ * Swagger output formats: an encoding, optionally compressed. Documents are streamed to the target through
+ * Jackson's generator, without building an intermediate String.
+ * <p>
+ * Pretty-printed YAML and JSON are meant to be read by people. Machine consumers read compact JSON
+ * ({@code min.json}), or the binary JSON encodings Smile and CBOR, faster and in fewer bytes.
+ * Any encoding can be compressed with gzip ({@code .gz}) or zstd ({@code .zst}); zstd compresses about as well
+ * as gzip at a fraction of the time. The format name, for example {@code min.json.zst}, is also the file extension.
+ * <p>
+ * Formats are compared by identity: {@link #values()}, {@link #fromName(String)} and the constants return the same instances.
+ */
+public final class OutputFormat {
+
+	/**
+	 * How the document is encoded, before compression.
+	 */
+	public enum Encoding {
+		YAML("yaml", "application/x-yaml", false),
+		JSON("json", "application/json", false),
+		JSON_COMPACT("min.json", "application/json", false),
+		SMILE("smile", "application/x-jackson-smile", true),
+		CBOR("cbor", "application/cbor", true);
+
+		private final String name;
+		private final String contentType;
+		private final boolean binary;
+
+		private Encoding(String name, String contentType, boolean binary) {
+			this.name = name;
+			this.contentType = contentType;
+			this.binary = binary;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	public enum Compression {
+		NONE("", null),
+		GZIP(".gz", "application/gzip"),
+		ZSTD(".zst", "application/zstd");
+
+		private final String suffix;
+		private final String contentType;
+
+		private Compression(String suffix, String contentType) {
+			this.suffix = suffix;
+			this.contentType = contentType;
+		}
+
+		public String getSuffix() {
+			return suffix;
+		}
+	}
+
+	private static final List<OutputFormat> VALUES;
+
+	static {
+		List<OutputFormat> values = new ArrayList<OutputFormat>();
+		for (Compression compression : Compression.values()) {
+			for (Encoding encoding : Encoding.values()) {
+				values.add(new OutputFormat(encoding, compression));
+			}
+		}
+		VALUES = Collections.unmodifiableList(values);
+	}
+
+	public static final OutputFormat YAML = valueOf(Encoding.YAML, Compression.NONE);
+	public static final OutputFormat JSON = valueOf(Encoding.JSON, Compression.NONE);
+	public static final OutputFormat YAML_GZIP = valueOf(Encoding.YAML, Compression.GZIP);
+	public static final OutputFormat JSON_GZIP = valueOf(Encoding.JSON, Compression.GZIP);
+	public static final OutputFormat JSON_COMPACT = valueOf(Encoding.JSON_COMPACT, Compression.NONE);
+	public static final OutputFormat SMILE = valueOf(Encoding.SMILE, Compression.NONE);
+	public static final OutputFormat CBOR = valueOf(Encoding.CBOR, Compression.NONE);
+
+	/**
+	 * zstd level 3, the default of the zstd command line, compresses Swagger documents about as well as gzip.
+	 */
+	private static final int ZSTD_LEVEL = 3;
+
+	private final Encoding encoding;
+	private final Compression compression;
+	private final String name;
+
+	private OutputFormat(Encoding encoding, Compression compression) {
+		this.encoding = encoding;
+		this.compression = compression;
+		this.name = encoding.name + compression.suffix;
+	}
+
+	/**
+	 * All encodings, uncompressed and with each compression.
+	 */
+	public static List<OutputFormat> values() {
+		return VALUES;
+	}
+
+	public static OutputFormat valueOf(Encoding encoding, Compression compression) {
+		for (OutputFormat format : VALUES) {
+			if (format.encoding == encoding && format.compression == compression) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException(encoding + " " + compression);
+	}
+
+	/**
+	 * Format name as accepted on the command line, also used as file extension.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	/**
+	 * MIME type of documents in this format.
+	 */
+	public String getContentType() {
+		return compression.contentType != null ? compression.contentType : encoding.contentType;
+	}
+
+	/**
+	 * True for binary encodings and compressed formats, which cannot be written as a String.
+	 */
+	public boolean isBinary() {
+		return encoding.binary || compression != Compression.NONE;
+	}
+
+	/**
+	 * Returns the format with the given name, or null if the format is not supported.
+	 */
+	public static OutputFormat fromName(String name) {
+		for (OutputFormat format : VALUES) {
+			if (format.name.equals(name)) {
+				return format;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the document to the stream. The stream is flushed but not closed.
+	 */
+	public void write(Swagger swagger, OutputStream out) throws IOException {
+		JsonGenerator generator = createGenerator(out);
+		try {
+			getMapper().writeValue(generator, swagger);
+		} finally {
+			generator.close();
+		}
+	}
+
+	public String writeAsString(Swagger swagger) throws IOException {
+		if (isBinary()) {
+			throw new IllegalStateException("Binary format " + name + " cannot be written as a String");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(swagger, out);
+		return out.toString("UTF-8");
+	}
+
+	/**
+	 * Opens a generator for writing a document piece by piece, with the same serialization settings
+	 * as {@link #write(Swagger, OutputStream)}. Closing the generator finishes the document and the compression,
+	 * the stream is flushed but not closed.
+	 */
+	public JsonGenerator createGenerator(OutputStream out) throws IOException {
+		OutputStream target = new NonClosingOutputStream(out);
+		if (compression == Compression.GZIP) {
+			target = new GZIPOutputStream(target, 8192);
+		} else if (compression == Compression.ZSTD) {
+			target = new ZstdOutputStream(target, ZSTD_LEVEL);
+		}
+		JsonGenerator generator = getFactory().createGenerator(target);
+		generator.setCodec(getMapper());
+		if (encoding == Encoding.JSON) {
+			generator.useDefaultPrettyPrinter();
+		}
+		return generator;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	private ObjectMapper getMapper() {
+		return encoding == Encoding.YAML ? Yaml.mapper() : Json.mapper();
+	}
+
+	/**
+	 * The binary encodings are written with the settings of the JSON mapper through their own generators.
+	 */
+	private JsonFactory getFactory() {
+		switch (encoding) {
+		case SMILE:
+			return BinaryFactories.SMILE;
+		case CBOR:
+			return BinaryFactories.CBOR;
+		default:
+			return getMapper().getFactory();
+		}
+	}
+
+	/**
+	 * Created on first use of a binary encoding.
+	 */
+	private static class BinaryFactories {
+		static final JsonFactory SMILE = new SmileFactory();
+		static final JsonFactory CBOR = new CBORFactory();
+	}
+
+	/**
+	 * Jackson closes the target stream after writing a value, which must not close the caller's stream.
+	 */
+	private static class NonClosingOutputStream extends FilterOutputStream {
+
+		NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
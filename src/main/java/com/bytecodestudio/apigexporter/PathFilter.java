@@ -0,0 +1,129 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Include/exclude filter on resource paths, for exporting part of a large API.
+ * Patterns are matched segment by segment: {@code *} matches within one segment and {@code **} matches
+ * any number of segments, including none, so {@code /v2/orders/**} matches {@code /v2/orders} and everything below it.
+ * A resource is exported when it matches at least one include pattern, or there are none, and no exclude pattern.
+ */
+public class PathFilter {
+
+	/**
+	 * Prefix of exclude patterns in {@link #parse(List)}.
+	 */
+	public static final String EXCLUDE_PREFIX = "!";
+
+	private final List<String> includes;
+	private final List<String> excludes;
+	private final List<Pattern> includePatterns = new ArrayList<Pattern>();
+	private final List<Pattern> excludePatterns = new ArrayList<Pattern>();
+
+	public PathFilter(List<String> includes, List<String> excludes) {
+		this.includes = new ArrayList<String>(includes);
+		this.excludes = new ArrayList<String>(excludes);
+		for (String include : includes) {
+			includePatterns.add(toPattern(include));
+		}
+		for (String exclude : excludes) {
+			excludePatterns.add(toPattern(exclude));
+		}
+	}
+
+	/**
+	 * Creates a filter from patterns as given on the command line, exclude patterns start with {@code !}.
+	 */
+	public static PathFilter parse(List<String> patterns) {
+		List<String> includes = new ArrayList<String>();
+		List<String> excludes = new ArrayList<String>();
+		for (String pattern : patterns) {
+			pattern = pattern.trim();
+			if (pattern.startsWith(EXCLUDE_PREFIX)) {
+				excludes.add(pattern.substring(EXCLUDE_PREFIX.length()));
+			} else if (!pattern.isEmpty()) {
+				includes.add(pattern);
+			}
+		}
+		return new PathFilter(includes, excludes);
+	}
+
+	public List<String> getIncludes() {
+		return Collections.unmodifiableList(includes);
+	}
+
+	public List<String> getExcludes() {
+		return Collections.unmodifiableList(excludes);
+	}
+
+	public boolean matches(String path) {
+		String normalized = normalize(path);
+		boolean included = includePatterns.isEmpty();
+		for (Pattern pattern : includePatterns) {
+			if (pattern.matcher(normalized).matches()) {
+				included = true;
+				break;
+			}
+		}
+		if (!included) {
+			return false;
+		}
+		for (Pattern pattern : excludePatterns) {
+			if (pattern.matcher(normalized).matches()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Patterns in command line syntax, used to tell apart exports of the same API with different filters.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (String include : includes) {
+			sb.append(sb.length() > 0 ? "," : "").append(include);
+		}
+		for (String exclude : excludes) {
+			sb.append(sb.length() > 0 ? "," : "").append(EXCLUDE_PREFIX).append(exclude);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The root resource "/" becomes the empty string, so that {@code /**} matches it.
+	 */
+	private static String normalize(String path) {
+		return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+	}
+
+	private static Pattern toPattern(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (String segment : normalize(glob.trim()).split("/")) {
+			if (segment.isEmpty()) {
+				continue;
+			}
+			if ("**".equals(segment)) {
+				regex.append("(/[^/]+)*");
+				continue;
+			}
+			regex.append("/");
+			int start = 0;
+			for (int i = segment.indexOf('*'); i >= 0; i = segment.indexOf('*', start)) {
+				if (i > start) {
+					regex.append(Pattern.quote(segment.substring(start, i)));
+				}
+				regex.append("[^/]*");
+				start = i + 1;
+			}
+			if (start < segment.length()) {
+				regex.append(Pattern.quote(segment.substring(start)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
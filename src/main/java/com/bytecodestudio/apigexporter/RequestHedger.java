@@ -0,0 +1,277 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second copy of a HAL request that is slower than most recent requests of its link type,
+ * and uses whichever response arrives first. A few straggling requests out of thousands then no longer
+ * hold up the export. Only idempotent GETs are hedged, so a duplicate request has no side effects.
+ * <p>
+ * A request is hedged once it has been outstanding for longer than the configured percentile of the
+ * recent latencies of its link type, and at least the minimum delay. Hedges are capped so that they do not
+ * cause throttling: they are paid for from a budget that grows by the maximum hedge ratio with every
+ * request, and are only sent while the {@link AdaptiveLimiter} has a free slot. Both copies go through
+ * the limiter like any other request.
+ * <p>
+ * Requests that cannot be hedged, because the latency of their link type is not known yet or the budget
+ * is spent, run on the calling thread. Only requests that are a single HTTP exchange should be hedged,
+ * such as a page of a list; a hedge of a traversal that follows several links would repeat all of them.
+ * The HAL proxies of the SDK load their links lazily and are not safe to use from two threads, so only
+ * the signed page requests of the {@link EmbeddedHalReader} are hedged.
+ * <p>
+ * The loser of a hedged request is interrupted, but a request that is already being read completes
+ * in the background and its response is discarded.
+ */
+public class RequestHedger {
+
+	public static final double DEFAULT_PERCENTILE = 95;
+	public static final double DEFAULT_MAX_HEDGE_RATIO = 0.05;
+	public static final long DEFAULT_MIN_DELAY_MILLIS = 100;
+
+	static final int SAMPLE_WINDOW = 256;
+	static final int MIN_SAMPLES = 20;
+	static final int UPDATE_INTERVAL = 16;
+	private static final double MAX_BUDGET = 10;
+
+	private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(ApiFetcher.newThreadFactory("apig-exporter-hedge-"));
+
+	private final double percentile;
+	private final double maxHedgeRatio;
+	private final long minDelayNanos;
+	private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<String, LatencyWindow>();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong hedgeCount = new AtomicLong();
+	private final AtomicLong winCount = new AtomicLong();
+	private final AtomicLong skipCount = new AtomicLong();
+	private double budget;
+
+	public RequestHedger() {
+		this(DEFAULT_PERCENTILE, DEFAULT_MAX_HEDGE_RATIO, DEFAULT_MIN_DELAY_MILLIS);
+	}
+
+	/**
+	 * @param percentile percentile of the recent latencies after which a request is hedged, for example 95
+	 * @param maxHedgeRatio maximum share of requests that are hedged, for example 0.05
+	 * @param minDelayMillis requests are never hedged before this delay
+	 */
+	public RequestHedger(double percentile, double maxHedgeRatio, long minDelayMillis) {
+		this.percentile = Math.max(0, Math.min(100, percentile));
+		this.maxHedgeRatio = Math.max(0, maxHedgeRatio);
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+	}
+
+	/**
+	 * Runs the call through the limiter, and a hedge of it if it is slow.
+	 * A failure before the hedge is sent is thrown right away; after that, the call fails only if both copies fail.
+	 *
+	 * @param limiter may be null to send the requests unpaced
+	 * @param metrics may be null
+	 */
+	public <T> T execute(String linkType, ExportMetrics metrics, AdaptiveLimiter limiter, AdaptiveLimiter.Call<T> call) {
+		return execute(linkType, metrics, limiter, 0, call);
+	}
+
+	/**
+	 * Like {@link #execute(String, ExportMetrics, AdaptiveLimiter, AdaptiveLimiter.Call)}, and the limiter
+	 * also retries server errors of each copy, see {@link AdaptiveLimiter#execute(String, ExportMetrics, int, AdaptiveLimiter.Call)}.
+	 */
+	public <T> T execute(final String linkType, final ExportMetrics metrics, final AdaptiveLimiter limiter,
+			final int maxServerErrorRetries, final AdaptiveLimiter.Call<T> call) {
+		requestCount.incrementAndGet();
+		boolean canHedge = addBudget();
+		long delayNanos = getDelayNanos(linkType);
+		if (delayNanos == Long.MAX_VALUE || !canHedge) {
+			//Cannot be hedged, so it runs on the calling thread without a handoff to another thread
+			long start = System.nanoTime();
+			T result = limiter != null ? limiter.execute(linkType, metrics, maxServerErrorRetries, call) : call.call();
+			long nanos = System.nanoTime() - start;
+			if (delayNanos != Long.MAX_VALUE && nanos > delayNanos) {
+				skipCount.incrementAndGet();
+			}
+			record(linkType, nanos);
+			return result;
+		}
+		Callable<T> attempt = new Callable<T>() {
+			@Override
+			public T call() {
+				return limiter != null ? limiter.execute(linkType, metrics, maxServerErrorRetries, call) : call.call();
+			}
+		};
+		long start = System.nanoTime();
+		CompletionService<T> completion = new ExecutorCompletionService<T>(EXECUTOR);
+		Future<T> primary = completion.submit(attempt);
+		Future<T> hedge = null;
+		try {
+			Future<T> done = completion.poll(delayNanos, TimeUnit.NANOSECONDS);
+			if (done == null) {
+				if (tryAcquireHedge(limiter)) {
+					hedge = completion.submit(attempt);
+					hedgeCount.incrementAndGet();
+					if (metrics != null) {
+						metrics.recordHedge(linkType);
+					}
+				} else {
+					skipCount.incrementAndGet();
+				}
+				done = completion.take();
+			}
+			if (hedge != null && isFailed(done)) {
+				//The other copy may still succeed
+				Future<T> other = completion.take();
+				if (!isFailed(other)) {
+					done = other;
+				}
+			}
+			T result = getResult(done);
+			if (done == hedge) {
+				winCount.incrementAndGet();
+				if (metrics != null) {
+					metrics.recordHedgeWin(linkType);
+				}
+			}
+			record(linkType, System.nanoTime() - start);
+			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a response", e);
+		} finally {
+			primary.cancel(true);
+			if (hedge != null) {
+				hedge.cancel(true);
+			}
+		}
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Number of hedges sent.
+	 */
+	public long getHedgeCount() {
+		return hedgeCount.get();
+	}
+
+	/**
+	 * Number of hedges that responded before the original request.
+	 */
+	public long getWinCount() {
+		return winCount.get();
+	}
+
+	/**
+	 * Number of slow requests that were not hedged because the budget was spent or the limiter was full.
+	 */
+	public long getSkipCount() {
+		return skipCount.get();
+	}
+
+	/**
+	 * @return the percentile of the recent latencies of the link type, or the maximum delay while there are
+	 * too few samples, so that nothing is hedged before the latency is known
+	 */
+	long getDelayNanos(String linkType) {
+		LatencyWindow window = latencies.get(linkType);
+		long percentileNanos = window != null ? window.percentileNanos : Long.MAX_VALUE;
+		return percentileNanos == Long.MAX_VALUE ? percentileNanos : Math.max(minDelayNanos, percentileNanos);
+	}
+
+	private void record(String linkType, long nanos) {
+		LatencyWindow window = latencies.get(linkType);
+		if (window == null) {
+			window = new LatencyWindow(percentile);
+			LatencyWindow existing = latencies.putIfAbsent(linkType, window);
+			if (existing != null) {
+				window = existing;
+			}
+		}
+		window.add(nanos);
+	}
+
+	/**
+	 * @return true if the budget allows a hedge
+	 */
+	private synchronized boolean addBudget() {
+		budget = Math.min(MAX_BUDGET, budget + maxHedgeRatio);
+		return budget >= 1;
+	}
+
+	private synchronized boolean tryAcquireHedge(AdaptiveLimiter limiter) {
+		if (budget < 1 || (limiter != null && limiter.getInFlight() >= limiter.getLimit())) {
+			return false;
+		}
+		budget--;
+		return true;
+	}
+
+	private static boolean isFailed(Future<?> future) throws InterruptedException {
+		try {
+			future.get();
+			return false;
+		} catch (ExecutionException e) {
+			return true;
+		}
+	}
+
+	private static <T> T getResult(Future<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * The latest {@link #SAMPLE_WINDOW} latencies of a link type. The percentile is recomputed every
+	 * {@link #UPDATE_INTERVAL} samples rather than on every request, and read without locking.
+	 */
+	private static class LatencyWindow {
+		private final double percentile;
+		private final long[] samples = new long[SAMPLE_WINDOW];
+		private int size;
+		private int next;
+		private int added;
+		private volatile long percentileNanos = Long.MAX_VALUE;
+
+		LatencyWindow(double percentile) {
+			this.percentile = percentile;
+		}
+
+		synchronized void add(long nanos) {
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			size = Math.min(samples.length, size + 1);
+			added++;
+			if (size >= MIN_SAMPLES && (percentileNanos == Long.MAX_VALUE || added >= UPDATE_INTERVAL)) {
+				percentileNanos = computePercentile();
+				added = 0;
+			}
+		}
+
+		private long computePercentile() {
+			long[] sorted = Arrays.copyOf(samples, size);
+			Arrays.sort(sorted);
+			int rank = (int) Math.ceil(size * percentile / 100) - 1;
+			return sorted[Math.max(0, Math.min(size - 1, rank))];
+		}
+	}
+}
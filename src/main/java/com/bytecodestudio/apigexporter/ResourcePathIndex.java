@@ -0,0 +1,79 @@
+package com.bytecodestudio.apigexporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Path trie over the resources of an {@link ApiSnapshot} that have at least one method.
+ * Built once per export, it provides the common base path and the relative Swagger path of each resource.
+ */
+public class ResourcePathIndex {
+
+	private final Node root = new Node();
+	private final List<ApiSnapshot.Resource> resources = new ArrayList<ApiSnapshot.Resource>();
+	private String basePath;
+
+	public ResourcePathIndex(ApiSnapshot snapshot) {
+		for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+			Map<String, ApiSnapshot.Method> resourceMethods = resource.getMethods();
+			if (resourceMethods == null || resourceMethods.isEmpty()) {
+				continue;
+			}
+			add(resource);
+		}
+	}
+
+	private void add(ApiSnapshot.Resource resource) {
+		Node node = root;
+		for (String segment : resource.getPath().split("/")) {
+			if (segment.isEmpty()) {
+				continue;
+			}
+			Node child = node.children.get(segment);
+			if (child == null) {
+				child = new Node();
+				node.children.put(segment, child);
+			}
+			node = child;
+		}
+		node.terminal = true;
+		resources.add(resource);
+	}
+
+	/**
+	 * Resources with methods, in the order they were returned by API Gateway.
+	 */
+	public List<ApiSnapshot.Resource> getResources() {
+		return Collections.unmodifiableList(resources);
+	}
+
+	/**
+	 * Longest path shared by all resources with methods, empty string for the root.
+	 */
+	public String getBasePath() {
+		if (basePath == null) {
+			StringBuilder sb = new StringBuilder();
+			Node node = root;
+			while (!node.terminal && node.children.size() == 1) {
+				Map.Entry<String, Node> child = node.children.entrySet().iterator().next();
+				sb.append("/");
+				sb.append(child.getKey());
+				node = child.getValue();
+			}
+			basePath = sb.toString();
+		}
+		return basePath;
+	}
+
+	public String getRelativePath(ApiSnapshot.Resource resource) {
+		return resource.getPath().substring(getBasePath().length());
+	}
+
+	private static class Node {
+		private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+		private boolean terminal;
+	}
+}
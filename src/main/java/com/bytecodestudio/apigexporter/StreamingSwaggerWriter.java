@@ -0,0 +1,119 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import io.swagger.models.Path;
+import io.swagger.models.Swagger;
+
+/**
+ * Writes a document while {@link SwaggerTransformer} produces it: each path is serialized as soon as
+ * its resource has been transformed and is not referenced afterwards, so the memory used for the document
+ * is bounded by the largest resource rather than the size of the API. With a
+ * {@link SwaggerTransformer.ResourceLoader}, the methods of the snapshot are also fetched resource by resource.
+ * <p>
+ * The fields are written in the order of the fields of the Swagger model, as when the complete model is
+ * serialized, so the document is the same. The security definitions and the definitions follow the paths
+ * in that order, which is where they are complete.
+ */
+public class StreamingSwaggerWriter implements SwaggerTransformer.PathSink {
+
+	private final OutputFormat format;
+	private final OutputStream out;
+	private JsonGenerator generator;
+
+	/**
+	 * @param out flushed but not closed
+	 */
+	public StreamingSwaggerWriter(OutputFormat format, OutputStream out) {
+		this.format = format;
+		this.out = out;
+	}
+
+	/**
+	 * Transforms the snapshot and writes the document.
+	 */
+	public void write(SwaggerTransformer transformer, ApiSnapshot snapshot, String host) throws IOException {
+		write(transformer, snapshot, host, null, Collections.singletonList(this));
+	}
+
+	/**
+	 * Transforms the snapshot once and writes each path to all writers, for example one per format.
+	 *
+	 * @param loader loads the methods of each resource just before its path is built, null if the snapshot is complete
+	 */
+	public static void write(SwaggerTransformer transformer, ApiSnapshot snapshot, String host,
+			SwaggerTransformer.ResourceLoader loader, final List<StreamingSwaggerWriter> writers) throws IOException {
+		try {
+			Swagger swagger = transformer.transform(snapshot, host, new SwaggerTransformer.PathSink() {
+				@Override
+				public void begin(Swagger swagger) throws IOException {
+					for (StreamingSwaggerWriter writer : writers) {
+						writer.begin(swagger);
+					}
+				}
+
+				@Override
+				public void path(String relativePath, Path path) throws IOException {
+					for (StreamingSwaggerWriter writer : writers) {
+						writer.path(relativePath, path);
+					}
+				}
+			}, loader);
+			for (StreamingSwaggerWriter writer : writers) {
+				writer.end(swagger);
+			}
+		} finally {
+			for (StreamingSwaggerWriter writer : writers) {
+				writer.close();
+			}
+		}
+	}
+
+	@Override
+	public void begin(Swagger swagger) throws IOException {
+		generator = format.createGenerator(out);
+		generator.writeStartObject();
+		writeField("swagger", swagger.getSwagger());
+		writeField("info", swagger.getInfo());
+		writeField("host", swagger.getHost());
+		writeField("basePath", swagger.getBasePath());
+		writeField("schemes", swagger.getSchemes());
+		writeField("consumes", swagger.getConsumes());
+		writeField("produces", swagger.getProduces());
+		generator.writeFieldName("paths");
+		generator.writeStartObject();
+	}
+
+	@Override
+	public void path(String relativePath, Path path) throws IOException {
+		generator.writeObjectField(relativePath, path);
+	}
+
+	private void end(Swagger swagger) throws IOException {
+		generator.writeEndObject();
+		writeField("securityDefinitions", swagger.getSecurityDefinitions());
+		writeField("definitions", swagger.getDefinitions());
+		generator.writeEndObject();
+	}
+
+	private void close() throws IOException {
+		if (generator != null) {
+			generator.close();
+			generator = null;
+		}
+	}
+
+	/**
+	 * Null values are left out, as with the serialization settings of the complete model.
+	 */
+	private void writeField(String name, Object value) throws IOException {
+		if (value != null) {
+			generator.writeObjectField(name, value);
+		}
+	}
+}
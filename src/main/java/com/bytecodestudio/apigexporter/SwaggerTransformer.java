@@ -0,0 +1,602 @@
+package com.bytecodestudio.apigexporter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import io.swagger.models.Info;
+import io.swagger.models.ModelImpl;
+import io.swagger.models.Operation;
+import io.swagger.models.Path;
+import io.swagger.models.RefModel;
+import io.swagger.models.Response;
+import io.swagger.models.Scheme;
+import io.swagger.models.Swagger;
+import io.swagger.models.auth.ApiKeyAuthDefinition;
+import io.swagger.models.auth.In;
+import io.swagger.models.parameters.BodyParameter;
+import io.swagger.models.parameters.HeaderParameter;
+import io.swagger.models.parameters.Parameter;
+import io.swagger.models.parameters.PathParameter;
+import io.swagger.models.parameters.QueryParameter;
+import io.swagger.models.properties.Property;
+import io.swagger.models.properties.PropertyBuilder;
+import io.swagger.models.properties.RefProperty;
+import io.swagger.models.properties.StringProperty;
+
+/**
+ * Transforms an {@link ApiSnapshot} into a Swagger model. Works on in-memory data only,
+ * so it can run without network access, for example from a saved snapshot or in benchmarks.
+ * <p>
+ * Paths are handed to a {@link PathSink} one resource at a time, so a streaming writer can serialize and
+ * drop each path before the next one is built, instead of holding the complete Swagger model.
+ * <p>
+ * In canonical mode, paths, definitions, responses, parameters, headers, content types and the maps of the
+ * integration extension are sorted, so that exports of an unchanged API are byte for byte identical.
+ */
+public class SwaggerTransformer {
+
+	private static final String SECURITY_API_KEY = "api_key";
+	private static final String METHOD_REQUEST_HEADER = "method.request.header.";
+	private static final String METHOD_REQUEST_QUERYSTRING = "method.request.querystring.";
+	private static final String METHOD_REQUEST_PATH = "method.request.path.";
+    private static final String METHOD_RESPONSE_HEADER = "method.response.header.";
+	
+    private static final String DEFAULT_CONTENT_TYPE = "application/json";
+    private static final String EXTENSION_AUTH = "x-amazon-apigateway-auth";
+    private static final String EXTENSION_INTEGRATION = "x-amazon-apigateway-integration";
+
+    private static enum ConsumesProducesEnum {
+    	CONSUMES, PRODUCES
+    }
+    
+	private final boolean inlineBodyParameterSchema;
+	private final boolean inlineResponseSchema;
+	private final ExecutorService executor;
+	private final ModelSchemaCache modelSchemaCache = ModelSchemaCache.getShared();
+	private ExportMetrics metrics;
+	private boolean canonical;
+
+	public SwaggerTransformer() {
+		this(true, true, null);
+	}
+
+	/**
+	 * @param executor parses model schemas in parallel, may be null to parse them on the calling thread
+	 */
+	public SwaggerTransformer(ExecutorService executor) {
+		this(true, true, executor);
+	}
+
+	/**
+	 * @param inlineBodyParameterSchema inline request models that are not referenced by other models
+	 * @param inlineResponseSchema inline empty response models of a primitive type that are not referenced by other models
+	 * @param executor parses model schemas in parallel, may be null to parse them on the calling thread
+	 */
+	public SwaggerTransformer(boolean inlineBodyParameterSchema, boolean inlineResponseSchema, ExecutorService executor) {
+		this.inlineBodyParameterSchema = inlineBodyParameterSchema;
+		this.inlineResponseSchema = inlineResponseSchema;
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the collector for the model parsing time, null to disable metrics.
+	 */
+	public void setMetrics(ExportMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sorts every map and set of the document by key instead of keeping the order of API Gateway.
+	 */
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+
+	/**
+	 * Receives the result of a transformation as it is produced.
+	 */
+	public interface PathSink {
+
+		/**
+		 * Called once before the first path, with the info, host, base path, schemes and the global
+		 * consumes and produces of the document.
+		 */
+		void begin(Swagger swagger) throws IOException;
+
+		/**
+		 * Called once per resource with methods, ordered by path like the paths of the Swagger model.
+		 * The model sorts them when they are read, so that is the order of the serialized document.
+		 */
+		void path(String relativePath, Path path) throws IOException;
+	}
+
+	/**
+	 * Supplies the methods of resources while they are transformed, for snapshots whose resources
+	 * only list the HTTP methods of their methods, see {@link ApiFetcher#fetchOutline}.
+	 */
+	public interface ResourceLoader {
+
+		/**
+		 * @param resources resources of the snapshot, in the order they are transformed
+		 * @return the same resources with their methods, the iterator throws {@link java.io.UncheckedIOException}
+		 * if a resource cannot be loaded
+		 */
+		Iterator<ApiSnapshot.Resource> load(List<ApiSnapshot.Resource> resources);
+	}
+
+	/**
+	 * @param host host name of the API, for example {@code <restApiId>.execute-api.<region>.amazonaws.com}
+	 */
+	public Swagger transform(ApiSnapshot snapshot, String host) throws IOException {
+		final Map<String, Path> paths = newMap(canonical);
+		Swagger swagger = transform(snapshot, host, new PathSink() {
+			@Override
+			public void begin(Swagger swagger) {
+			}
+
+			@Override
+			public void path(String relativePath, Path path) {
+				paths.put(relativePath, path);
+			}
+		});
+		swagger.setPaths(paths);
+		return swagger;
+	}
+
+	/**
+	 * Transforms the snapshot without keeping the paths: each path is passed to the sink and dropped.
+	 *
+	 * @return the document without paths, with the definitions that were not inlined into a path
+	 * and the security definitions, which are only known after the last path
+	 */
+	public Swagger transform(ApiSnapshot snapshot, String host, PathSink sink) throws IOException {
+		return transform(snapshot, host, sink, null);
+	}
+
+	/**
+	 * Transforms a snapshot whose methods are loaded resource by resource, after the definitions
+	 * and just before the path of the resource is built. The global consumes and produces are taken from
+	 * the methods of the snapshot before the first path, so they only need the models of the methods.
+	 *
+	 * @param loader null if the snapshot is complete
+	 */
+	public Swagger transform(ApiSnapshot snapshot, String host, PathSink sink, ResourceLoader loader) throws IOException {
+		ResourcePathIndex pathIndex = new ResourcePathIndex(snapshot);
+		String basePath = pathIndex.getBasePath();
+		Swagger swagger = new Swagger()
+				.info(new Info().title(snapshot.getName()).description(snapshot.getDescription()))
+				.host(host)
+				.scheme(Scheme.HTTPS)
+				.basePath(basePath.isEmpty() ? "/" : basePath);
+		
+		long start = ExportMetrics.start();
+		swagger.setDefinitions(getDefinitions(snapshot, modelSchemaCache, executor, canonical));
+		if (metrics != null) {
+			metrics.recordPhase(ExportMetrics.PHASE_PARSE_MODELS, start);
+		}
+		
+		ModelReferenceIndex modelReferences = ModelReferenceIndex.build(swagger.getDefinitions().values());
+		List<ApiSnapshot.Resource> resourceList = getResources(pathIndex);
+		addConsumesProduces(swagger, resourceList, canonical);
+		sink.begin(swagger);
+		
+		boolean addApiKey = false;
+		Iterator<ApiSnapshot.Resource> resources = loader != null ? loader.load(resourceList) : resourceList.iterator();
+		while (resources.hasNext()) {
+			ApiSnapshot.Resource resource = next(resources);
+			Path path = new Path();			
+			for (ApiSnapshot.Method method : resource.getMethods().values()) {
+				Operation operation = new Operation();
+//					operation.setSummary(summary);
+//					operation.setDescription(description);
+				
+				Map<String, String> requestModels = method.getRequestModels();
+				if (requestModels != null && !requestModels.isEmpty()) {
+					String requestModelName = requestModels.get(DEFAULT_CONTENT_TYPE);
+					if (requestModelName == null) {
+						requestModelName = getFirstModel(requestModels, canonical);
+					}
+					operation.addParameter(getBodyParameter(requestModelName, inlineBodyParameterSchema, swagger, modelReferences));
+					updateOperationConsumesProduces(ConsumesProducesEnum.CONSUMES, operation, requestModels.keySet(), canonical);
+				}
+				Map<String, Boolean> requestParameters = sorted(method.getRequestParameters(), canonical);
+				if (requestParameters != null) {
+					for (Map.Entry<String, Boolean> parameterEntry : requestParameters.entrySet()) {
+						operation.addParameter(getParameter(parameterEntry));
+					}
+				}
+				Map<String, ApiSnapshot.MethodResponse> methodResponses = sorted(method.getMethodResponses(), canonical);
+				if (methodResponses != null) {
+					for (Map.Entry<String, ApiSnapshot.MethodResponse> responseEntry : methodResponses.entrySet()) {
+						ApiSnapshot.MethodResponse methodResponse = responseEntry.getValue();
+						Response response = new Response().headers(getResponseHeaders(methodResponse, canonical));
+						Map<String, String> responseModels = methodResponse.getResponseModels();
+						if (responseModels != null && !responseModels.isEmpty()) {
+							String responseModelName = responseModels.get(DEFAULT_CONTENT_TYPE);
+							if (responseModelName == null) {
+								responseModelName = getFirstModel(responseModels, canonical);
+							}
+							response.setDescription(responseModelName);
+							response.setSchema(getResponseSchema(responseModelName, inlineResponseSchema, swagger, modelReferences));
+							updateOperationConsumesProduces(ConsumesProducesEnum.PRODUCES, operation, responseModels.keySet(), canonical);
+						}
+						operation.addResponse(methodResponse.getStatusCode(), response);
+					}					
+				}
+				
+				String authType = method.getAuthorizationType();
+				if (authType != null) {
+					operation.setVendorExtension(EXTENSION_AUTH, Collections.singletonMap("type", authType));
+				}
+
+				ApiSnapshot.Integration integration = method.getIntegration();
+				if (integration != null) {
+					operation.setVendorExtension(EXTENSION_INTEGRATION, getIntegration(integration, resource.getId(), canonical));
+				}
+				
+				Boolean apiKeyRequired = method.getApiKeyRequired();
+				if (apiKeyRequired != null && apiKeyRequired.booleanValue()) {
+					operation.addSecurity(SECURITY_API_KEY, Collections.<String>emptyList());
+					addApiKey = true;
+				}
+
+				path.set(method.getHttpMethod().toLowerCase(), operation);
+			}
+			sink.path(pathIndex.getRelativePath(resource), path);
+		}
+		if (addApiKey) {
+			swagger.addSecurityDefinition(SECURITY_API_KEY, 
+					new ApiKeyAuthDefinition().name("x-api-key").in(In.HEADER));
+		}
+		return swagger;
+	}
+
+	/**
+	 * Adds the global consumes and produces: the default content type if a method uses it, and the other
+	 * content types that all operations with other content types have in common. They come from the request
+	 * and response models of the methods alone, so they are added before the first path is built.
+	 */
+	private static void addConsumesProduces(Swagger swagger, List<ApiSnapshot.Resource> resources, boolean canonical) {
+		boolean consumesDefaultContentType = false;
+		List<String> consumesContentType = null;
+		boolean producesDefaultContentType = false;
+		List<String> producesContentType = null;
+		for (ApiSnapshot.Resource resource : resources) {
+			for (ApiSnapshot.Method method : resource.getMethods().values()) {
+				Map<String, String> requestModels = method.getRequestModels();
+				if (requestModels != null && !requestModels.isEmpty()) {
+					consumesDefaultContentType |= requestModels.get(DEFAULT_CONTENT_TYPE) != null;
+					Set<String> operationConsumes = getContentTypes(requestModels.keySet(), canonical);
+					if (!operationConsumes.isEmpty()) {
+						consumesContentType = retainAll(consumesContentType, operationConsumes);
+					}
+				}
+				Set<String> operationProduces = new LinkedHashSet<String>();
+				Map<String, ApiSnapshot.MethodResponse> methodResponses = sorted(method.getMethodResponses(), canonical);
+				if (methodResponses != null) {
+					for (ApiSnapshot.MethodResponse methodResponse : methodResponses.values()) {
+						Map<String, String> responseModels = methodResponse.getResponseModels();
+						if (responseModels != null && !responseModels.isEmpty()) {
+							producesDefaultContentType |= responseModels.get(DEFAULT_CONTENT_TYPE) != null;
+							operationProduces.addAll(getContentTypes(responseModels.keySet(), canonical));
+						}
+					}
+				}
+				if (!operationProduces.isEmpty()) {
+					producesContentType = retainAll(producesContentType, operationProduces);
+				}
+			}
+		}
+		if (producesDefaultContentType) {
+			swagger.addProduces(DEFAULT_CONTENT_TYPE);
+		}
+		if (producesContentType != null) {
+			for (String contentType : sorted(producesContentType, canonical)) {
+				swagger.addProduces(contentType);
+			}
+		}
+		if (consumesDefaultContentType) {
+			swagger.addConsumes(DEFAULT_CONTENT_TYPE);
+		}
+		if (consumesContentType != null) {
+			for (String contentType : sorted(consumesContentType, canonical)) {
+				swagger.addConsumes(contentType);
+			}
+		}
+	}
+
+	/**
+	 * @param common content types of the operations so far, null before the first one
+	 */
+	private static List<String> retainAll(List<String> common, Collection<String> contentTypes) {
+		if (common == null) {
+			return new ArrayList<String>(contentTypes);
+		}
+		common.retainAll(contentTypes);
+		return common;
+	}
+
+	/**
+	 * The content types other than the default one, sorted in canonical mode.
+	 */
+	private static Set<String> getContentTypes(Collection<String> contentTypes, boolean canonical) {
+		Set<String> result = canonical ? new TreeSet<String>(contentTypes) : new HashSet<String>(contentTypes);
+		result.remove(DEFAULT_CONTENT_TYPE);
+		return result;
+	}
+
+	/**
+	 * Resources with methods, ordered by their Swagger path.
+	 */
+	private static List<ApiSnapshot.Resource> getResources(final ResourcePathIndex pathIndex) {
+		List<ApiSnapshot.Resource> resources = new ArrayList<ApiSnapshot.Resource>(pathIndex.getResources());
+		Collections.sort(resources, new Comparator<ApiSnapshot.Resource>() {
+			@Override
+			public int compare(ApiSnapshot.Resource a, ApiSnapshot.Resource b) {
+				return pathIndex.getRelativePath(a).compareTo(pathIndex.getRelativePath(b));
+			}
+		});
+		return resources;
+	}
+
+	/**
+	 * Model used when there is none for the default content type: the first one in API Gateway order,
+	 * which may differ between exports, or the one of the lowest content type in canonical mode.
+	 */
+	private static String getFirstModel(Map<String, String> models, boolean canonical) {
+		return sorted(models, canonical).values().iterator().next();
+	}
+
+	private static ApiSnapshot.Resource next(Iterator<ApiSnapshot.Resource> resources) throws IOException {
+		try {
+			return resources.next();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static <V> Map<String, V> newMap(boolean canonical) {
+		return canonical ? new TreeMap<String, V>() : new HashMap<String, V>();
+	}
+
+	/**
+	 * @return the map sorted by key in canonical mode, otherwise the map itself
+	 */
+	private static <V> Map<String, V> sorted(Map<String, V> map, boolean canonical) {
+		if (!canonical || map == null || map instanceof SortedMap) {
+			return map;
+		}
+		return new TreeMap<String, V>(map);
+	}
+
+	private static Collection<String> sorted(Collection<String> values, boolean canonical) {
+		return canonical ? new TreeSet<String>(values) : values;
+	}
+
+	private static void updateOperationConsumesProduces(ConsumesProducesEnum consumesProduces, Operation operation,
+			Collection<String> contentTypes, boolean canonical) {
+		Set<String> result = getContentTypes(contentTypes, canonical);
+		if (!result.isEmpty()) {
+			List<String> oldValue = consumesProduces == ConsumesProducesEnum.CONSUMES 
+					? operation.getConsumes() : operation.getProduces();
+			@SuppressWarnings("unchecked")
+			Set<String> oldValueSet = new LinkedHashSet<String>(oldValue != null ? oldValue : Collections.EMPTY_LIST);
+			oldValueSet.addAll(result);
+			if (consumesProduces == ConsumesProducesEnum.CONSUMES) {
+				operation.setConsumes(new ArrayList<String>(oldValueSet));
+			} else {
+				operation.setProduces(new ArrayList<String>(oldValueSet));
+			}
+		}
+	}
+
+	static Property getResponseSchema(String responseModelName, boolean inlineResponseSchema,
+			Swagger swagger, ModelReferenceIndex modelReferences) {
+		Property schema = new RefProperty(responseModelName);
+		if (inlineResponseSchema && !modelReferences.isReferenced(responseModelName)) {
+			io.swagger.models.Model model = swagger.getDefinitions().get(responseModelName);
+			//If empty model was generated for response type
+			if (model instanceof ModelImpl) {
+				Map<String, Property> modelProperties = ((ModelImpl) model).getProperties();
+				if (modelProperties == null || modelProperties.isEmpty()) {
+					String type = ((ModelImpl) model).getType();
+					if (type != null) {
+						Property property = PropertyBuilder.build(type, ((ModelImpl) model).getFormat(), null);
+						if (property != null) {
+							schema = property;
+							swagger.getDefinitions().remove(responseModelName);
+						}
+					}
+				}
+			}
+		}
+		return schema;
+	}
+
+	private static Map<String, Property> getResponseHeaders(ApiSnapshot.MethodResponse methodResponse, boolean canonical) {
+		Map<String, Property> result = null;
+		Map<String, Boolean> responseParameters = sorted(methodResponse.getResponseParameters(), canonical);
+		if (responseParameters != null) {
+			for (Map.Entry<String, Boolean> responseParameterEntry : responseParameters.entrySet()) {
+				String parameterName = responseParameterEntry.getKey();
+				if (parameterName.startsWith(METHOD_RESPONSE_HEADER)) {
+					StringProperty headerProperty = new StringProperty();
+					headerProperty.setRequired(responseParameterEntry.getValue());
+					if (result == null) {
+						result = new LinkedHashMap<String, Property>();
+					}
+					result.put(parameterName.substring(METHOD_RESPONSE_HEADER.length()), headerProperty);
+				} else {
+					throw new UnsupportedOperationException("Unsupported response parameter type " + parameterName);
+				}
+			}
+		}
+		return result;
+	}
+
+	static BodyParameter getBodyParameter(String requestModelName, boolean inlineBodyParameterSchema, 
+			Swagger swagger, ModelReferenceIndex modelReferences) {
+		BodyParameter parameter = new BodyParameter().name("body").description(requestModelName);
+		if (inlineBodyParameterSchema && !modelReferences.isReferenced(requestModelName)) {
+			parameter.setSchema(swagger.getDefinitions().remove(requestModelName));
+		} else {
+			parameter.setSchema(new RefModel(requestModelName));
+		}
+		return parameter;
+	}
+
+	static Map<String, Object> getIntegration(ApiSnapshot.Integration integration, String defaultCacheNamespace) {
+		return getIntegration(integration, defaultCacheNamespace, false);
+	}
+
+	/**
+	 * @param canonical sort the integration, its responses and their maps by key
+	 */
+	static Map<String, Object> getIntegration(ApiSnapshot.Integration integration, String defaultCacheNamespace, boolean canonical) {
+		Map<String, Object> integrationMap = newMap(canonical);
+		putIfNotNullOrEmpty(integrationMap, "type", integration.getType(), canonical);
+		putIfNotNullOrEmpty(integrationMap, "uri", integration.getUri(), canonical);
+		putIfNotNullOrEmpty(integrationMap, "httpMethod", integration.getHttpMethod(), canonical);
+		putIfNotNullOrEmpty(integrationMap, "credentials", integration.getCredentials(), canonical);
+		String cacheNamespace = integration.getCacheNamespace();
+		if (cacheNamespace != null && !cacheNamespace.equals(defaultCacheNamespace)) {
+			putIfNotNullOrEmpty(integrationMap, "cacheNamespace", cacheNamespace, canonical);
+		}
+		putIfNotNullOrEmpty(integrationMap, "cacheKeyParameters",  integration.getCacheKeyParameters(), canonical);
+		putIfNotNullOrEmpty(integrationMap, "requestTemplates", integration.getRequestTemplates(), canonical);
+		putIfNotNullOrEmpty(integrationMap, "requestParameters",  integration.getRequestParameters(), canonical);
+		
+		Map<String, ApiSnapshot.IntegrationResponse> integrationResponses = integration.getIntegrationResponses();
+		if (integrationResponses != null && !integrationResponses.isEmpty()) {
+			Map<String, Object> responsesMap = newMap(canonical);
+			for (ApiSnapshot.IntegrationResponse integrationResponse : integrationResponses.values()) {
+				String pattern = integrationResponse.getSelectionPattern();
+				if (pattern == null) {
+					pattern = "default";
+				}
+				Map<String, Object> map = newMap(canonical);
+				putIfNotNullOrEmpty(map, "statusCode",  integrationResponse.getStatusCode(), canonical);
+				putIfNotNullOrEmpty(map, "responseParameters",  integrationResponse.getResponseParameters(), canonical);
+				putIfNotNullOrEmpty(map, "responseTemplates", integrationResponse.getResponseTemplates(), canonical);
+				putIfNotNullOrEmpty(responsesMap, pattern, map, canonical);
+			}
+			putIfNotNullOrEmpty(integrationMap, "responses", responsesMap, canonical);
+		}
+		return integrationMap;
+	}
+
+	static Parameter getParameter(Map.Entry<String, Boolean> parameterEntry) {
+		Parameter parameter;
+		String parameterName = parameterEntry.getKey();
+		if (parameterName.startsWith(METHOD_REQUEST_PATH)) {
+			parameter = new PathParameter()
+					.name(parameterName.substring(METHOD_REQUEST_PATH.length()))
+					.type("string"); 	//There is no type information for params in API gateway
+		} else if (parameterName.startsWith(METHOD_REQUEST_QUERYSTRING)) {
+			parameter = new QueryParameter() 
+					.name(parameterName.substring(METHOD_REQUEST_QUERYSTRING.length()))
+					.type("string");
+		} else if (parameterName.startsWith(METHOD_REQUEST_HEADER)) {
+			parameter = new HeaderParameter()
+					.name(parameterName.substring(METHOD_REQUEST_HEADER.length()))
+					.type("string");
+		} else {
+			throw new UnsupportedOperationException("Unsupported request parameter type " + parameterName);
+		}
+		parameter.setRequired(parameterEntry.getValue());
+		return parameter;
+	}
+
+	/**
+	 * Parses the model schemas through the cache, in parallel if an executor is given.
+	 * Identical schemas, within the API or across exports, are parsed only once.
+	 */
+	static Map<String, io.swagger.models.Model> getDefinitions(ApiSnapshot snapshot,
+			final ModelSchemaCache modelSchemaCache, ExecutorService executor) throws IOException {
+		return getDefinitions(snapshot, modelSchemaCache, executor, false);
+	}
+
+	/**
+	 * @param canonical sort the definitions by name
+	 */
+	static Map<String, io.swagger.models.Model> getDefinitions(ApiSnapshot snapshot,
+			final ModelSchemaCache modelSchemaCache, ExecutorService executor, boolean canonical) throws IOException {
+		List<ApiSnapshot.Model> modelItems = snapshot.getModels();
+		List<Future<io.swagger.models.Model>> futures = null;
+		if (executor != null && modelItems.size() > 1) {
+			futures = new ArrayList<Future<io.swagger.models.Model>>(modelItems.size());
+			for (final ApiSnapshot.Model modelItem : modelItems) {
+				futures.add(executor.submit(new Callable<io.swagger.models.Model>() {
+					@Override
+					public io.swagger.models.Model call() throws IOException {
+						return modelSchemaCache.parse(modelItem.getSchema());
+					}
+				}));
+			}
+		}
+		Map<String, io.swagger.models.Model> result = newMap(canonical);
+		for (int i = 0; i < modelItems.size(); i++) {
+			ApiSnapshot.Model modelItem = modelItems.get(i);
+			io.swagger.models.Model model = futures != null
+					? ApiFetcher.await(futures.get(i)) : modelSchemaCache.parse(modelItem.getSchema());
+			if (model instanceof ModelImpl) {
+				((ModelImpl) model).setName(modelItem.getName());
+			}
+			model.setDescription(modelItem.getDescription());
+			result.put(modelItem.getName(), model);
+		}
+		return result;
+	}
+
+	static void putIfNotNullOrEmpty(Map<String, Object> map, String key, Object value) {
+		putIfNotNullOrEmpty(map, key, value, false);
+	}
+
+	/**
+	 * @param canonical copy map values into maps sorted by key
+	 */
+	@SuppressWarnings("rawtypes")
+	static void putIfNotNullOrEmpty(Map<String, Object> map, String key, Object value, boolean canonical) {
+		if (value == null) {
+			return;
+		}
+		if (value instanceof Collection && ((Collection) value).isEmpty()) {
+			return;
+		}
+		if (value instanceof Map) {
+			if (((Map) value).isEmpty()) {
+				return;
+			}
+			Map<String, Object> copy = newMap(canonical);
+			//Workaround for com.amazonaws.hal.client.ConvertingMap with null values
+			for (Object mapKey : ((Map) value).keySet()) {
+				Object mapValue = ((Map) value).get(mapKey);
+				if (mapValue == null) {
+					mapValue = "";
+				}
+				copy.put(mapKey.toString(), mapValue);
+			}
+			value = copy;
+		}
+		map.put(key, value);
+	}
+
+}
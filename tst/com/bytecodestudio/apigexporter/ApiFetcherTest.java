@@ -0,0 +1,201 @@
+package com.bytecodestudio.apigexporter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.bytecodestudio.apigexporter.stub.HalStubServer;
+import com.bytecodestudio.apigexporter.stub.SyntheticApiGenerator;
+
+import io.swagger.models.Swagger;
+
+/**
+ * Fetches a synthetic API from a {@link HalStubServer} by each of the traversal paths
+ * and compares the snapshot with the API the server was given.
+ */
+public class ApiFetcherTest {
+
+	private static final String API_ID = "abcde12345";
+	private static final String REGION = "us-east-1";
+
+	private ApiSnapshot api;
+	private HalStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		//More resources than fit on one page of the stub server, so that pages are followed
+		api = new SyntheticApiGenerator(1).generate(API_ID, HalStubServer.DEFAULT_PAGE_SIZE + 10, 3, 5);
+		server = new HalStubServer(0);
+		server.addApi(api);
+		server.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void fetchFollowsLinks() throws Exception {
+		APIGExporter exporter = newExporter();
+		exporter.setEmbedded(false);
+		assertEquals(describe(api), describe(exporter.fetchSnapshot(API_ID, false)));
+	}
+
+	@Test
+	public void fetchReadsEmbeddedPages() throws Exception {
+		APIGExporter linkExporter = newExporter();
+		linkExporter.setEmbedded(false);
+		linkExporter.fetchSnapshot(API_ID, false);
+		long linkRequests = server.getRequestCount();
+
+		ApiSnapshot snapshot = newExporter().fetchSnapshot(API_ID, false);
+		assertEquals(describe(api), describe(snapshot));
+		long embeddedRequests = server.getRequestCount() - linkRequests;
+		assertTrue("embedded " + embeddedRequests + ", links " + linkRequests, embeddedRequests < linkRequests);
+	}
+
+	@Test
+	public void fetchFallsBackToLinksWithoutEmbedding() throws Exception {
+		server.setEmbedSupported(false);
+		APIGExporter exporter = newExporter();
+		assertEquals(describe(api), describe(exporter.fetchSnapshot(API_ID, false)));
+		//The reader remembers that the endpoint does not embed
+		assertEquals(describe(api), describe(exporter.fetchSnapshot(API_ID, false)));
+	}
+
+	@Test
+	public void fetchAppliesPathFilter() throws Exception {
+		APIGExporter exporter = newExporter();
+		exporter.setEmbedded(false);
+		exporter.setPathFilter(PathFilter.parse(Collections.singletonList("/v1/items0/**")));
+		ApiSnapshot snapshot = exporter.fetchSnapshot(API_ID, false);
+		assertTrue(!snapshot.getResources().isEmpty());
+		for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+			assertTrue(resource.getPath(), resource.getPath().startsWith("/v1/items0"));
+		}
+	}
+
+	@Test
+	public void filteredFetchReadsOnlyIncludedResources() throws Exception {
+		APIGExporter emptyExporter = newExporter();
+		emptyExporter.setPathFilter(PathFilter.parse(Collections.singletonList("/none")));
+		assertTrue(emptyExporter.fetchSnapshot(API_ID, false).getResources().isEmpty());
+		//The API, the models and the resource list
+		long listRequests = server.getRequestCount();
+
+		APIGExporter exporter = newExporter();
+		exporter.setPathFilter(PathFilter.parse(Collections.singletonList("/v1/items0/**")));
+		ApiSnapshot snapshot = exporter.fetchSnapshot(API_ID, false);
+		int included = snapshot.getResources().size();
+		assertTrue(included > 0 && included < api.getResources().size());
+		assertEquals(listRequests + included, server.getRequestCount() - listRequests);
+		for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+			assertEquals(3, resource.getMethods().size());
+			for (ApiSnapshot.Method method : resource.getMethods().values()) {
+				assertTrue(resource.getPath(), method.getIntegration() != null);
+			}
+		}
+	}
+
+	@Test
+	public void concurrentExportMatchesSequentialExport() throws Exception {
+		for (boolean embedded : new boolean[] {false, true}) {
+			byte[] expected = exportJson(1, embedded);
+			assertArrayEquals("embedded " + embedded, expected, exportJson(16, embedded));
+		}
+	}
+
+	@Test
+	public void resolvesIdsAndNames() throws Exception {
+		APIGExporter exporter = newExporter();
+		assertEquals(Arrays.asList(API_ID, API_ID, "other"),
+				exporter.resolveRestApiIds(Arrays.asList(API_ID, "name:" + api.getName(), "id:other")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsShortUnknownName() throws Exception {
+		newExporter().resolveRestApiIds(Arrays.asList("ab"));
+	}
+
+	@Test
+	public void streamingExportMatchesExportOfCompleteSnapshot() throws Exception {
+		APIGExporter exporter = newExporter();
+		exporter.setEmbedded(false);
+		exporter.setCanonical(true);
+		//Serialized from the complete Swagger model
+		Swagger swagger = exporter.transform(exporter.fetchSnapshot(API_ID, false));
+		ByteArrayOutputStream expectedJson = new ByteArrayOutputStream();
+		exporter.write(swagger, OutputFormat.JSON, expectedJson);
+		ByteArrayOutputStream expectedYaml = new ByteArrayOutputStream();
+		exporter.write(swagger, OutputFormat.YAML, expectedYaml);
+
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		ByteArrayOutputStream yaml = new ByteArrayOutputStream();
+		exporter.exportStreaming(API_ID, false, Arrays.asList(OutputFormat.JSON, OutputFormat.YAML),
+				Arrays.<OutputStream>asList(json, yaml));
+		assertArrayEquals(expectedJson.toByteArray(), json.toByteArray());
+		assertArrayEquals(expectedYaml.toByteArray(), yaml.toByteArray());
+	}
+
+	private byte[] exportJson(int concurrency, boolean embedded) throws Exception {
+		APIGExporter exporter = newExporter();
+		exporter.setConcurrency(concurrency);
+		exporter.setEmbedded(embedded);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exporter.export(API_ID, OutputFormat.JSON, out);
+		return out.toByteArray();
+	}
+
+	private APIGExporter newExporter() {
+		APIGExporter exporter = new APIGExporter(new AWSCredentialsProvider() {
+			@Override
+			public AWSCredentials getCredentials() {
+				return new BasicAWSCredentials("test", "test");
+			}
+
+			@Override
+			public void refresh() {
+			}
+		}, REGION, server.getEndpoint());
+		exporter.setConcurrency(4);
+		return exporter;
+	}
+
+	/**
+	 * The parts of a snapshot that the stub server serves, one line each, in order.
+	 */
+	private static List<String> describe(ApiSnapshot snapshot) {
+		List<String> result = new ArrayList<String>();
+		result.add("api " + snapshot.getId() + " " + snapshot.getName());
+		for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+			result.add("resource " + resource.getId() + " " + resource.getPath());
+			for (Map.Entry<String, ApiSnapshot.Method> methodEntry : resource.getMethods().entrySet()) {
+				ApiSnapshot.Method method = methodEntry.getValue();
+				ApiSnapshot.Integration integration = method.getIntegration();
+				result.add("method " + methodEntry.getKey() + " " + method.getHttpMethod() + " " + method.getAuthorizationType()
+						+ " " + method.getRequestModels() + " " + method.getMethodResponses().keySet()
+						+ " " + (integration != null ? integration.getType() + " " + integration.getUri() : null));
+			}
+		}
+		for (ApiSnapshot.Model model : snapshot.getModels()) {
+			result.add("model " + model.getName() + " " + model.getSchema());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,81 @@
+package com.bytecodestudio.apigexporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.bytecodestudio.apigexporter.stub.SyntheticApiGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ApiSnapshotFileTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writeAndRead() throws Exception {
+		ApiSnapshot snapshot = new SyntheticApiGenerator(1).generate("abcde12345", 40, 3, 10);
+		File file = new File(folder.getRoot(), "api" + ApiSnapshotFile.FILE_SUFFIX);
+		long before = System.currentTimeMillis();
+		ApiSnapshotFile.write(file, snapshot, "eu-west-1");
+
+		ApiSnapshotFile read = ApiSnapshotFile.read(file);
+		assertEquals("eu-west-1", read.getRegion());
+		assertTrue(read.getCreatedMillis() >= before);
+		assertEquals(mapper.valueToTree(snapshot), mapper.valueToTree(read.getSnapshot()));
+	}
+
+	@Test
+	public void writeAndReadEmptyApi() throws Exception {
+		ApiSnapshot snapshot = new ApiSnapshot();
+		snapshot.setId("abcde12345");
+		File file = new File(folder.getRoot(), "empty" + ApiSnapshotFile.FILE_SUFFIX);
+		ApiSnapshotFile.write(file, snapshot, null);
+
+		ApiSnapshotFile read = ApiSnapshotFile.read(file);
+		assertEquals(mapper.valueToTree(snapshot), mapper.valueToTree(read.getSnapshot()));
+		assertNull(read.getRegion());
+	}
+
+	@Test
+	public void readRejectsOtherFiles() throws Exception {
+		File file = folder.newFile("api.yaml");
+		Files.write(file.toPath(), "swagger: '2.0'\n".getBytes("UTF-8"));
+		try {
+			ApiSnapshotFile.read(file);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("not an API snapshot file"));
+		}
+	}
+
+	@Test
+	public void readRejectsCorruptRecordLength() throws Exception {
+		ApiSnapshot snapshot = new SyntheticApiGenerator(1).generate("abcde12345", 2, 1, 1);
+		File file = new File(folder.getRoot(), "corrupt" + ApiSnapshotFile.FILE_SUFFIX);
+		ApiSnapshotFile.write(file, snapshot, null);
+		//Uncompressed length of the header record, after the magic number and the version
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.seek(12);
+			randomAccessFile.writeInt(Integer.MAX_VALUE);
+		}
+		try {
+			ApiSnapshotFile.read(file);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("corrupt"));
+		}
+	}
+}
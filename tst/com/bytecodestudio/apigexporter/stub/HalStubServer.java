@@ -0,0 +1,573 @@
+package com.bytecodestudio.apigexporter.stub;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.beust.jcommander.JCommander;
+import com.bytecodestudio.apigexporter.ApiSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the API Gateway control plane. Serves {@link ApiSnapshot}s in the HAL/JSON
+ * shapes consumed by aws-apigateway-sdk-java, with paging, a configurable per-request latency
+ * and optional throttling, so exports can be tested and benchmarked without AWS. Request signatures are not checked.
+ * Resource pages and single resources embed methods, method responses, integrations and integration responses
+ * when requested with {@code embed=methods}, unless embedding is disabled.
+ */
+public class HalStubServer {
+
+	public static final int DEFAULT_PAGE_SIZE = 25;
+
+	private static final Log LOG = LogFactory.getLog(HalStubServer.class);
+	private static final String CMD_NAME = "hal-stub-server";
+	private static final String CONTENT_TYPE = "application/hal+json";
+	private static final int MAX_PAGE_SIZE = 500;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Map<String, StubApi> apis = new LinkedHashMap<String, StubApi>();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private volatile long latencyMillis;
+	private volatile boolean embedSupported = true;
+	private int maxRequestsPerSecond;
+	private long windowSecond;
+	private int windowCount;
+	private final AtomicLong throttledCount = new AtomicLong();
+
+	public HalStubServer(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				HalStubServer.this.handle(exchange);
+			}
+		});
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+	}
+
+	public synchronized void addApi(ApiSnapshot api) {
+		apis.put(api.getId(), new StubApi(api));
+	}
+
+	/**
+	 * Delay added to every request, to simulate the network round trip to API Gateway.
+	 */
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * When disabled, {@code embed=methods} is ignored, like by an endpoint that does not support embedding.
+	 */
+	public void setEmbedSupported(boolean embedSupported) {
+		this.embedSupported = embedSupported;
+	}
+
+	/**
+	 * Answers requests beyond this rate with 429 TooManyRequestsException, like the API Gateway
+	 * control plane does. 0 disables throttling.
+	 */
+	public synchronized void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+		this.maxRequestsPerSecond = maxRequestsPerSecond;
+	}
+
+	public long getThrottledCount() {
+		return throttledCount.get();
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public String getEndpoint() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			requestCount.incrementAndGet();
+			if (latencyMillis > 0) {
+				Thread.sleep(latencyMillis);
+			}
+			if (!"GET".equals(exchange.getRequestMethod())) {
+				send(exchange, 405, error("Only GET is supported by the stub server"));
+				return;
+			}
+			if (isThrottled()) {
+				throttledCount.incrementAndGet();
+				exchange.getResponseHeaders().set("x-amzn-ErrorType", "TooManyRequestsException");
+				send(exchange, 429, error("Too Many Requests"));
+				return;
+			}
+			URI uri = exchange.getRequestURI();
+			ObjectNode body = route(uri.getPath().split("/"), parseQuery(uri.getRawQuery()));
+			if (body == null) {
+				send(exchange, 404, error("Not found: " + uri.getPath()));
+			} else {
+				send(exchange, 200, body);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			LOG.error("Error serving " + exchange.getRequestURI(), e);
+			send(exchange, 500, error(String.valueOf(e.getMessage())));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private synchronized boolean isThrottled() {
+		if (maxRequestsPerSecond <= 0) {
+			return false;
+		}
+		long second = System.currentTimeMillis() / 1000;
+		if (second != windowSecond) {
+			windowSecond = second;
+			windowCount = 0;
+		}
+		return ++windowCount > maxRequestsPerSecond;
+	}
+
+	private void send(HttpExchange exchange, int status, ObjectNode body) throws IOException {
+		byte[] bytes = mapper.writeValueAsBytes(body);
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * @param parts request path split on "/", parts[0] is always empty
+	 */
+	private synchronized ObjectNode route(String[] parts, Map<String, String> query) {
+		if (parts.length < 2 || !"restapis".equals(parts[1])) {
+			return null;
+		}
+		if (parts.length == 2) {
+			return page("/restapis", new ArrayList<StubApi>(apis.values()), query, new Renderer<StubApi>() {
+				@Override
+				public ObjectNode render(StubApi api) {
+					return restApi(api);
+				}
+			});
+		}
+		final StubApi api = apis.get(parts[2]);
+		if (api == null) {
+			return null;
+		}
+		String base = "/restapis/" + api.snapshot.getId();
+		if (parts.length == 3) {
+			return restApi(api);
+		}
+		if (parts.length == 4 && "resources".equals(parts[3])) {
+			final boolean embedMethods = embedSupported && "methods".equals(query.get("embed"));
+			return page(base + "/resources", api.snapshot.getResources(), query, new Renderer<ApiSnapshot.Resource>() {
+				@Override
+				public ObjectNode render(ApiSnapshot.Resource resource) {
+					ObjectNode result = resource(api, resource);
+					if (embedMethods && !resource.getMethods().isEmpty()) {
+						embedMethods(api, resource, result);
+					}
+					return result;
+				}
+			});
+		}
+		if (parts.length == 4 && "models".equals(parts[3])) {
+			return page(base + "/models", api.snapshot.getModels(), query, new Renderer<ApiSnapshot.Model>() {
+				@Override
+				public ObjectNode render(ApiSnapshot.Model model) {
+					return model(api, model);
+				}
+			});
+		}
+		if (parts.length == 4 && "deployments".equals(parts[3])) {
+			return page(base + "/deployments", api.deployments, query, new Renderer<ObjectNode>() {
+				@Override
+				public ObjectNode render(ObjectNode deployment) {
+					return deployment;
+				}
+			});
+		}
+		if (parts.length == 5 && "models".equals(parts[3])) {
+			ApiSnapshot.Model model = api.modelsByName.get(parts[4]);
+			return model != null ? model(api, model) : null;
+		}
+		if (parts.length < 5 || !"resources".equals(parts[3])) {
+			return null;
+		}
+		ApiSnapshot.Resource resource = api.resourcesById.get(parts[4]);
+		if (resource == null) {
+			return null;
+		}
+		if (parts.length == 5) {
+			ObjectNode result = resource(api, resource);
+			if (embedSupported && "methods".equals(query.get("embed")) && !resource.getMethods().isEmpty()) {
+				embedMethods(api, resource, result);
+			}
+			return result;
+		}
+		if (parts.length < 7 || !"methods".equals(parts[5])) {
+			return null;
+		}
+		ApiSnapshot.Method method = resource.getMethods().get(parts[6]);
+		if (method == null) {
+			return null;
+		}
+		String methodHref = base + "/resources/" + resource.getId() + "/methods/" + parts[6];
+		if (parts.length == 7) {
+			return method(methodHref, method);
+		}
+		if (parts.length == 9 && "responses".equals(parts[7])) {
+			ApiSnapshot.MethodResponse response = get(method.getMethodResponses(), parts[8]);
+			return response != null ? methodResponse(methodHref + "/responses/" + parts[8], response) : null;
+		}
+		ApiSnapshot.Integration integration = method.getIntegration();
+		if (integration == null || !"integration".equals(parts[7])) {
+			return null;
+		}
+		if (parts.length == 8) {
+			return integration(methodHref + "/integration", integration);
+		}
+		if (parts.length == 10 && "responses".equals(parts[8])) {
+			ApiSnapshot.IntegrationResponse response = get(integration.getIntegrationResponses(), parts[9]);
+			return response != null ? integrationResponse(methodHref + "/integration/responses/" + parts[9], response) : null;
+		}
+		return null;
+	}
+
+	private <T> ObjectNode page(String href, List<T> items, Map<String, String> query, Renderer<T> renderer) {
+		int position = query.containsKey("position") ? Integer.parseInt(query.get("position")) : 0;
+		int limit = query.containsKey("limit") ? Math.min(Integer.parseInt(query.get("limit")), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+		int end = Math.min(items.size(), position + limit);
+
+		ObjectNode result = mapper.createObjectNode();
+		ObjectNode links = result.putObject("_links");
+		links.set("self", link(href));
+		ArrayNode itemLinks = links.putArray("item");
+		ArrayNode embeddedItems = result.putObject("_embedded").putArray("item");
+		for (int i = position; i < end; i++) {
+			ObjectNode item = renderer.render(items.get(i));
+			itemLinks.add(item.get("_links").get("self"));
+			embeddedItems.add(item);
+		}
+		if (end < items.size()) {
+			String embed = query.containsKey("embed") ? "&embed=" + query.get("embed") : "";
+			links.set("next", link(href + "?position=" + end + "&limit=" + limit + embed));
+		}
+		return result;
+	}
+
+	private ObjectNode restApi(StubApi api) {
+		String href = "/restapis/" + api.snapshot.getId();
+		ObjectNode result = mapper.createObjectNode();
+		ObjectNode links = result.putObject("_links");
+		links.set("self", link(href));
+		links.set("restapi:resources", link(href + "/resources"));
+		links.set("restapi:models", link(href + "/models"));
+		links.set("restapi:deployments", link(href + "/deployments"));
+		links.set("resource:by-id", templatedLink(href + "/resources/{resource_id}"));
+		links.set("model:by-name", templatedLink(href + "/models/{model_name}"));
+		result.put("id", api.snapshot.getId());
+		putIfNotNull(result, "name", api.snapshot.getName());
+		putIfNotNull(result, "description", api.snapshot.getDescription());
+		result.put("createdDate", "2015-07-09T00:00:00Z");
+		return result;
+	}
+
+	private ObjectNode resource(StubApi api, ApiSnapshot.Resource resource) {
+		String href = "/restapis/" + api.snapshot.getId() + "/resources/" + resource.getId();
+		ObjectNode result = mapper.createObjectNode();
+		ObjectNode links = result.putObject("_links");
+		links.set("self", link(href));
+		if (!resource.getMethods().isEmpty()) {
+			ArrayNode methods = links.putArray("resource:methods");
+			for (String httpMethod : resource.getMethods().keySet()) {
+				methods.add(namedLink(href + "/methods/" + httpMethod, httpMethod));
+			}
+		}
+		links.set("method:by-http-method", templatedLink(href + "/methods/{http_method}"));
+		result.put("id", resource.getId());
+		String parentId = api.parentIds.get(resource.getId());
+		putIfNotNull(result, "parentId", parentId);
+		String path = resource.getPath();
+		putIfNotNull(result, "pathPart", "/".equals(path) ? null : path.substring(path.lastIndexOf('/') + 1));
+		result.put("path", path);
+		return result;
+	}
+
+	/**
+	 * Embeds the methods of the resource, and their responses and integrations, as in {@code embed=methods}.
+	 */
+	private void embedMethods(StubApi api, ApiSnapshot.Resource resource, ObjectNode resourceNode) {
+		String href = "/restapis/" + api.snapshot.getId() + "/resources/" + resource.getId();
+		ArrayNode methods = resourceNode.putObject("_embedded").putArray("resource:methods");
+		for (Map.Entry<String, ApiSnapshot.Method> entry : resource.getMethods().entrySet()) {
+			String methodHref = href + "/methods/" + entry.getKey();
+			ApiSnapshot.Method method = entry.getValue();
+			ObjectNode methodNode = method(methodHref, method);
+			ObjectNode embedded = mapper.createObjectNode();
+			if (method.getMethodResponses() != null && !method.getMethodResponses().isEmpty()) {
+				ArrayNode responses = embedded.putArray("method:responses");
+				for (Map.Entry<String, ApiSnapshot.MethodResponse> response : method.getMethodResponses().entrySet()) {
+					responses.add(methodResponse(methodHref + "/responses/" + response.getKey(), response.getValue()));
+				}
+			}
+			ApiSnapshot.Integration integration = method.getIntegration();
+			if (integration != null) {
+				ObjectNode integrationNode = integration(methodHref + "/integration", integration);
+				if (integration.getIntegrationResponses() != null && !integration.getIntegrationResponses().isEmpty()) {
+					ArrayNode responses = integrationNode.putObject("_embedded").putArray("integration:responses");
+					for (Map.Entry<String, ApiSnapshot.IntegrationResponse> response : integration.getIntegrationResponses().entrySet()) {
+						responses.add(integrationResponse(methodHref + "/integration/responses/" + response.getKey(), response.getValue()));
+					}
+				}
+				embedded.set("method:integration", integrationNode);
+			}
+			if (embedded.size() > 0) {
+				methodNode.set("_embedded", embedded);
+			}
+			methods.add(methodNode);
+		}
+	}
+
+	private ObjectNode method(String href, ApiSnapshot.Method method) {
+		ObjectNode result = mapper.createObjectNode();
+		ObjectNode links = result.putObject("_links");
+		links.set("self", link(href));
+		if (method.getIntegration() != null) {
+			links.set("method:integration", link(href + "/integration"));
+		}
+		if (method.getMethodResponses() != null && !method.getMethodResponses().isEmpty()) {
+			ArrayNode responses = links.putArray("method:responses");
+			for (String statusCode : method.getMethodResponses().keySet()) {
+				responses.add(namedLink(href + "/responses/" + statusCode, statusCode));
+			}
+		}
+		result.put("httpMethod", method.getHttpMethod());
+		putIfNotNull(result, "authorizationType", method.getAuthorizationType());
+		if (method.getApiKeyRequired() != null) {
+			result.put("apiKeyRequired", method.getApiKeyRequired());
+		}
+		putIfNotNull(result, "requestModels", method.getRequestModels());
+		putIfNotNull(result, "requestParameters", method.getRequestParameters());
+		return result;
+	}
+
+	private ObjectNode methodResponse(String href, ApiSnapshot.MethodResponse response) {
+		ObjectNode result = mapper.createObjectNode();
+		result.putObject("_links").set("self", link(href));
+		result.put("statusCode", response.getStatusCode());
+		putIfNotNull(result, "responseParameters", response.getResponseParameters());
+		putIfNotNull(result, "responseModels", response.getResponseModels());
+		return result;
+	}
+
+	private ObjectNode integration(String href, ApiSnapshot.Integration integration) {
+		ObjectNode result = mapper.createObjectNode();
+		ObjectNode links = result.putObject("_links");
+		links.set("self", link(href));
+		if (integration.getIntegrationResponses() != null && !integration.getIntegrationResponses().isEmpty()) {
+			ArrayNode responses = links.putArray("integration:responses");
+			for (String statusCode : integration.getIntegrationResponses().keySet()) {
+				responses.add(namedLink(href + "/responses/" + statusCode, statusCode));
+			}
+		}
+		putIfNotNull(result, "type", integration.getType());
+		putIfNotNull(result, "uri", integration.getUri());
+		putIfNotNull(result, "httpMethod", integration.getHttpMethod());
+		putIfNotNull(result, "credentials", integration.getCredentials());
+		putIfNotNull(result, "cacheNamespace", integration.getCacheNamespace());
+		putIfNotNull(result, "cacheKeyParameters", integration.getCacheKeyParameters());
+		putIfNotNull(result, "requestTemplates", integration.getRequestTemplates());
+		putIfNotNull(result, "requestParameters", integration.getRequestParameters());
+		return result;
+	}
+
+	private ObjectNode integrationResponse(String href, ApiSnapshot.IntegrationResponse response) {
+		ObjectNode result = mapper.createObjectNode();
+		result.putObject("_links").set("self", link(href));
+		result.put("statusCode", response.getStatusCode());
+		putIfNotNull(result, "selectionPattern", response.getSelectionPattern());
+		putIfNotNull(result, "responseParameters", response.getResponseParameters());
+		putIfNotNull(result, "responseTemplates", response.getResponseTemplates());
+		return result;
+	}
+
+	private ObjectNode model(StubApi api, ApiSnapshot.Model model) {
+		ObjectNode result = mapper.createObjectNode();
+		result.putObject("_links").set("self", link("/restapis/" + api.snapshot.getId() + "/models/" + model.getName()));
+		result.put("id", model.getName());
+		result.put("name", model.getName());
+		putIfNotNull(result, "description", model.getDescription());
+		result.put("contentType", "application/json");
+		putIfNotNull(result, "schema", model.getSchema());
+		return result;
+	}
+
+	private ObjectNode link(String href) {
+		ObjectNode link = mapper.createObjectNode();
+		link.put("href", href);
+		return link;
+	}
+
+	private ObjectNode namedLink(String href, String name) {
+		ObjectNode link = link(href);
+		link.put("name", name);
+		link.put("title", name);
+		return link;
+	}
+
+	private ObjectNode templatedLink(String href) {
+		ObjectNode link = link(href);
+		link.put("templated", true);
+		return link;
+	}
+
+	private ObjectNode error(String message) {
+		ObjectNode result = mapper.createObjectNode();
+		result.put("message", message);
+		return result;
+	}
+
+	private void putIfNotNull(ObjectNode node, String field, Object value) {
+		if (value != null) {
+			node.set(field, mapper.valueToTree(value));
+		}
+	}
+
+	private static <V> V get(Map<String, V> map, String key) {
+		return map != null ? map.get(key) : null;
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+		Map<String, String> result = new HashMap<String, String>();
+		if (rawQuery != null) {
+			for (String parameter : rawQuery.split("&")) {
+				int eq = parameter.indexOf('=');
+				if (eq > 0) {
+					result.put(URLDecoder.decode(parameter.substring(0, eq), "UTF-8"),
+							URLDecoder.decode(parameter.substring(eq + 1), "UTF-8"));
+				}
+			}
+		}
+		return result;
+	}
+
+	private interface Renderer<T> {
+		ObjectNode render(T item);
+	}
+
+	private class StubApi {
+		private final ApiSnapshot snapshot;
+		private final Map<String, ApiSnapshot.Resource> resourcesById = new HashMap<String, ApiSnapshot.Resource>();
+		private final Map<String, String> parentIds = new HashMap<String, String>();
+		private final Map<String, ApiSnapshot.Model> modelsByName = new HashMap<String, ApiSnapshot.Model>();
+		private final List<ObjectNode> deployments = new ArrayList<ObjectNode>();
+
+		StubApi(ApiSnapshot snapshot) {
+			this.snapshot = snapshot;
+			Map<String, String> idsByPath = new HashMap<String, String>();
+			for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+				resourcesById.put(resource.getId(), resource);
+				idsByPath.put(resource.getPath(), resource.getId());
+			}
+			for (ApiSnapshot.Resource resource : snapshot.getResources()) {
+				String path = resource.getPath();
+				int slash = path.lastIndexOf('/');
+				if (!"/".equals(path)) {
+					parentIds.put(resource.getId(), idsByPath.get(slash == 0 ? "/" : path.substring(0, slash)));
+				}
+			}
+			for (ApiSnapshot.Model model : snapshot.getModels()) {
+				modelsByName.put(model.getName(), model);
+			}
+			ObjectNode deployment = mapper.createObjectNode();
+			deployment.putObject("_links").set("self", link("/restapis/" + snapshot.getId() + "/deployments/" + snapshot.getId() + "d1"));
+			deployment.put("id", snapshot.getId() + "d1");
+			deployment.put("createdDate", "2015-07-09T00:00:00Z");
+			deployments.add(deployment);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Options options = new Options();
+		JCommander jCommander = new JCommander(options, args);
+		jCommander.setProgramName(CMD_NAME);
+		if (options.help) {
+			jCommander.usage();
+			return;
+		}
+		HalStubServer server = new HalStubServer(options.port);
+		server.setLatencyMillis(options.latency);
+		server.setMaxRequestsPerSecond(options.maxRequestsPerSecond);
+		server.setEmbedSupported(!options.noEmbed);
+		server.addApi(new SyntheticApiGenerator(options.seed)
+				.generate(options.apiId, options.resources, options.methods, options.models));
+		server.start();
+		LOG.info("Serving API " + options.apiId + " at " + server.getEndpoint()
+				+ ", export with: --endpoint " + server.getEndpoint() + " --api " + options.apiId);
+	}
+
+	private static class Options {
+		@com.beust.jcommander.Parameter(names = "--port", description = "Port to listen on, 0 for any free port")
+		private int port = 8088;
+
+		@com.beust.jcommander.Parameter(names = "--api", description = "ID of the synthetic API")
+		private String apiId = "synthetic";
+
+		@com.beust.jcommander.Parameter(names = "--resources", description = "Number of resources with methods")
+		private int resources = 100;
+
+		@com.beust.jcommander.Parameter(names = "--methods", description = "Number of methods per resource")
+		private int methods = 3;
+
+		@com.beust.jcommander.Parameter(names = "--models", description = "Number of models")
+		private int models = 20;
+
+		@com.beust.jcommander.Parameter(names = "--latency", description = "Latency added to every request in milliseconds")
+		private long latency;
+
+		@com.beust.jcommander.Parameter(names = "--max-rps", description = "Requests per second above which the server answers 429, 0 for no throttling")
+		private int maxRequestsPerSecond;
+
+		@com.beust.jcommander.Parameter(names = "--no-embed", description = "Ignore embed=methods, like an endpoint that does not support embedding")
+		private boolean noEmbed;
+
+		@com.beust.jcommander.Parameter(names = "--seed", description = "Random seed of the API generator")
+		private long seed = 1;
+
+		@com.beust.jcommander.Parameter(names = "--help", help = true)
+		private boolean help;
+	}
+}
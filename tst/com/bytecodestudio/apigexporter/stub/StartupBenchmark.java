@@ -0,0 +1,165 @@
+package com.bytecodestudio.apigexporter.stub;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.beust.jcommander.JCommander;
+
+/**
+ * Measures the wall-clock time of complete CLI runs against an in-process {@link HalStubServer},
+ * with and without an AppCDS archive. Without an existing archive, a training run creates it first
+ * with {@code -XX:ArchiveClassesAtExit}, which needs JDK 13 or later.
+ * Used by the fast-start build profile, and can be run by hand:
+ * <pre>
+ * java -cp aws-apigateway-swagger-exporter-...-jar-with-dependencies.jar:build/private/classes/tests \
+ *     com.bytecodestudio.apigexporter.stub.StartupBenchmark --jar ...-jar-with-dependencies.jar --archive aws-api-export.jsa
+ * </pre>
+ */
+public class StartupBenchmark {
+
+	private static final Log LOG = LogFactory.getLog(StartupBenchmark.class);
+	private static final String CMD_NAME = "startup-benchmark";
+	private static final String API_ID = "startup";
+	private static final int MIN_DYNAMIC_ARCHIVE_JDK = 13;
+
+	private final Options options;
+	private final String endpoint;
+	private final File outputFile;
+
+	StartupBenchmark(Options options, String endpoint) throws IOException {
+		this.options = options;
+		this.endpoint = endpoint;
+		this.outputFile = File.createTempFile("startup-benchmark", ".json");
+		this.outputFile.deleteOnExit();
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new Options();
+		JCommander jCommander = new JCommander(options, args);
+		jCommander.setProgramName(CMD_NAME);
+		if (options.help || options.jar == null) {
+			jCommander.usage();
+			return;
+		}
+		HalStubServer server = new HalStubServer(0);
+		server.addApi(new SyntheticApiGenerator(1).generate(API_ID, options.resources, 3, 10));
+		server.start();
+		try {
+			new StartupBenchmark(options, server.getEndpoint()).run();
+		} finally {
+			server.stop();
+		}
+	}
+
+	private void run() throws IOException, InterruptedException {
+		File archive = options.archive != null ? new File(options.archive) : null;
+		if (archive != null && !archive.isFile()) {
+			if (getJavaVersion() < MIN_DYNAMIC_ARCHIVE_JDK) {
+				LOG.warn("AppCDS archives of application classes need JDK " + MIN_DYNAMIC_ARCHIVE_JDK + " or later, skipping");
+				archive = null;
+			} else {
+				long millis = export(Arrays.asList("-XX:ArchiveClassesAtExit=" + archive.getPath()));
+				LOG.info("Created AppCDS archive " + archive + " in a " + millis + " ms training run");
+			}
+		}
+
+		List<String> fastStartOptions = new ArrayList<String>();
+		fastStartOptions.add("-XX:TieredStopAtLevel=1");
+		if (archive != null && archive.isFile()) {
+			fastStartOptions.add("-XX:SharedArchiveFile=" + archive.getPath());
+		}
+		long[] baseline = measure(new ArrayList<String>());
+		long[] fastStart = measure(fastStartOptions);
+		LOG.info(String.format("Startup benchmark, %d runs each, export of %d resources:", options.runs, options.resources));
+		LOG.info(String.format("  default:    mean %5d ms, min %5d ms", mean(baseline), min(baseline)));
+		LOG.info(String.format("  fast-start: mean %5d ms, min %5d ms  %s", mean(fastStart), min(fastStart), fastStartOptions));
+		LOG.info(String.format("  speedup:    %.2fx", (double) mean(baseline) / Math.max(1, mean(fastStart))));
+	}
+
+	private long[] measure(List<String> jvmOptions) throws IOException, InterruptedException {
+		//One warm-up run fills the OS page cache
+		export(jvmOptions);
+		long[] result = new long[options.runs];
+		for (int i = 0; i < options.runs; i++) {
+			result[i] = export(jvmOptions);
+		}
+		return result;
+	}
+
+	/**
+	 * Runs one export in a new JVM and returns its wall-clock time in milliseconds.
+	 */
+	private long export(List<String> jvmOptions) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<String>();
+		command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		command.addAll(jvmOptions);
+		command.addAll(Arrays.asList("-jar", options.jar,
+				"--endpoint", endpoint, "--region", "us-east-1", "--api", API_ID,
+				"--force", "--format", "json", "--output", outputFile.getPath()));
+		ProcessBuilder processBuilder = new ProcessBuilder(command).inheritIO();
+		processBuilder.environment().put("AWS_ACCESS_KEY_ID", "stub");
+		processBuilder.environment().put("AWS_SECRET_ACCESS_KEY", "stub");
+		long start = System.nanoTime();
+		int exitCode = processBuilder.start().waitFor();
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (exitCode != 0) {
+			throw new IOException("Export failed with exit code " + exitCode + ": " + command);
+		}
+		return millis;
+	}
+
+	/**
+	 * Feature release of the running JDK: 8 for "1.8", 17 for "17".
+	 */
+	private static int getJavaVersion() {
+		String version = System.getProperty("java.specification.version");
+		if (version.startsWith("1.")) {
+			version = version.substring(2);
+		}
+		try {
+			return Integer.parseInt(version);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static long mean(long[] values) {
+		long sum = 0;
+		for (long value : values) {
+			sum += value;
+		}
+		return values.length > 0 ? sum / values.length : 0;
+	}
+
+	private static long min(long[] values) {
+		long min = Long.MAX_VALUE;
+		for (long value : values) {
+			min = Math.min(min, value);
+		}
+		return values.length > 0 ? min : 0;
+	}
+
+	private static class Options {
+		@com.beust.jcommander.Parameter(names = "--jar", description = "CLI jar with dependencies to benchmark")
+		private String jar;
+
+		@com.beust.jcommander.Parameter(names = "--archive", description = "AppCDS archive, created by a training run if it does not exist")
+		private String archive;
+
+		@com.beust.jcommander.Parameter(names = "--runs", description = "Measured runs per configuration")
+		private int runs = 5;
+
+		@com.beust.jcommander.Parameter(names = "--resources", description = "Number of resources of the exported API")
+		private int resources = 20;
+
+		@com.beust.jcommander.Parameter(names = "--help", help = true)
+		private boolean help;
+	}
+}
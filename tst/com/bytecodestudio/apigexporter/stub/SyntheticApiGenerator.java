@@ -0,0 +1,191 @@
+package com.bytecodestudio.apigexporter.stub;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.bytecodestudio.apigexporter.ApiSnapshot;
+
+/**
+ * Generates synthetic APIs of a given size for offline testing and benchmarking.
+ * The same seed always generates the same API.
+ */
+public class SyntheticApiGenerator {
+
+	private static final String[] HTTP_METHODS = {"GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS"};
+	private static final String[] PROPERTY_TYPES = {"string", "integer", "number", "boolean"};
+	private static final String JSON = "application/json";
+
+	private final Random random;
+
+	public SyntheticApiGenerator(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param resourceCount number of resources with methods, the root and /v1 resources are added without methods
+	 * @param methodsPerResource number of HTTP methods per resource, at most 7
+	 * @param modelCount number of models, requests and responses reference them round-robin
+	 */
+	public ApiSnapshot generate(String id, int resourceCount, int methodsPerResource, int modelCount) {
+		ApiSnapshot api = new ApiSnapshot();
+		api.setId(id);
+		api.setName("Synthetic API " + id);
+		api.setDescription("Synthetic API with " + resourceCount + " resources, "
+				+ methodsPerResource + " methods per resource and " + modelCount + " models");
+
+		ApiSnapshot.Resource root = new ApiSnapshot.Resource();
+		root.setId(id + "root");
+		root.setPath("/");
+		api.getResources().add(root);
+		ApiSnapshot.Resource version = new ApiSnapshot.Resource();
+		version.setId(id + "v1");
+		version.setPath("/v1");
+		api.getResources().add(version);
+
+		for (int i = 0; i < resourceCount; i++) {
+			ApiSnapshot.Resource resource = new ApiSnapshot.Resource();
+			resource.setId(id + "r" + i);
+			resource.setPath(getPath(i));
+			for (int m = 0; m < Math.min(methodsPerResource, HTTP_METHODS.length); m++) {
+				resource.getMethods().put(HTTP_METHODS[m], generateMethod(resource, HTTP_METHODS[m], i * HTTP_METHODS.length + m, modelCount));
+			}
+			api.getResources().add(resource);
+		}
+
+		for (int k = 0; k < modelCount; k++) {
+			api.getModels().add(generateModel(k, modelCount));
+		}
+		return api;
+	}
+
+	/**
+	 * Four resources per collection: /v1/items{n}, /v1/items{n}/{id}, /v1/items{n}/{id}/details, /v1/items{n}/{id}/details/{detailId}
+	 */
+	private static String getPath(int i) {
+		StringBuilder sb = new StringBuilder("/v1/items").append(i / 4);
+		int depth = i % 4;
+		if (depth >= 1) {
+			sb.append("/{id}");
+		}
+		if (depth >= 2) {
+			sb.append("/details");
+		}
+		if (depth >= 3) {
+			sb.append("/{detailId}");
+		}
+		return sb.toString();
+	}
+
+	private ApiSnapshot.Method generateMethod(ApiSnapshot.Resource resource, String httpMethod, int n, int modelCount) {
+		ApiSnapshot.Method method = new ApiSnapshot.Method();
+		method.setHttpMethod(httpMethod);
+		method.setAuthorizationType(n % 3 == 0 ? "AWS_IAM" : "NONE");
+		method.setApiKeyRequired(n % 2 == 0);
+
+		Map<String, Boolean> requestParameters = new LinkedHashMap<String, Boolean>();
+		for (String segment : resource.getPath().split("/")) {
+			if (segment.startsWith("{")) {
+				requestParameters.put("method.request.path." + segment.substring(1, segment.length() - 1), true);
+			}
+		}
+		if ("GET".equals(httpMethod)) {
+			requestParameters.put("method.request.querystring.limit", false);
+		}
+		requestParameters.put("method.request.header.X-Request-Id", false);
+		method.setRequestParameters(requestParameters);
+
+		if (modelCount > 0 && ("POST".equals(httpMethod) || "PUT".equals(httpMethod) || "PATCH".equals(httpMethod))) {
+			Map<String, String> requestModels = new LinkedHashMap<String, String>();
+			requestModels.put(JSON, getModelName(n % modelCount));
+			method.setRequestModels(requestModels);
+		}
+
+		Map<String, ApiSnapshot.MethodResponse> methodResponses = new LinkedHashMap<String, ApiSnapshot.MethodResponse>();
+		for (String statusCode : new String[] {"200", "400"}) {
+			ApiSnapshot.MethodResponse response = new ApiSnapshot.MethodResponse();
+			response.setStatusCode(statusCode);
+			Map<String, Boolean> responseParameters = new LinkedHashMap<String, Boolean>();
+			responseParameters.put("method.response.header.X-Request-Id", false);
+			response.setResponseParameters(responseParameters);
+			if (modelCount > 0) {
+				Map<String, String> responseModels = new LinkedHashMap<String, String>();
+				responseModels.put(JSON, getModelName((n + 1) % modelCount));
+				response.setResponseModels(responseModels);
+			}
+			methodResponses.put(statusCode, response);
+		}
+		method.setMethodResponses(methodResponses);
+		method.setIntegration(generateIntegration(resource, n));
+		return method;
+	}
+
+	private ApiSnapshot.Integration generateIntegration(ApiSnapshot.Resource resource, int n) {
+		ApiSnapshot.Integration integration = new ApiSnapshot.Integration();
+		integration.setType("AWS");
+		integration.setHttpMethod("POST");
+		integration.setUri("arn:aws:apigateway:us-east-1:lambda:path/2015-03-31/functions/"
+				+ "arn:aws:lambda:us-east-1:123456789012:function:synthetic" + n + "/invocations");
+		integration.setCacheNamespace(resource.getId());
+		integration.setCacheKeyParameters(new ArrayList<String>());
+		Map<String, String> requestTemplates = new LinkedHashMap<String, String>();
+		requestTemplates.put(JSON, generateTemplate(n));
+		integration.setRequestTemplates(requestTemplates);
+		Map<String, String> requestParameters = new LinkedHashMap<String, String>();
+		requestParameters.put("integration.request.header.X-Request-Id", "method.request.header.X-Request-Id");
+		integration.setRequestParameters(requestParameters);
+
+		Map<String, ApiSnapshot.IntegrationResponse> integrationResponses = new LinkedHashMap<String, ApiSnapshot.IntegrationResponse>();
+		String[][] responses = {{"200", null}, {"400", "4\\d{2}"}};
+		for (String[] r : responses) {
+			ApiSnapshot.IntegrationResponse response = new ApiSnapshot.IntegrationResponse();
+			response.setStatusCode(r[0]);
+			response.setSelectionPattern(r[1]);
+			Map<String, String> responseParameters = new LinkedHashMap<String, String>();
+			responseParameters.put("method.response.header.X-Request-Id", "integration.response.header.X-Request-Id");
+			response.setResponseParameters(responseParameters);
+			Map<String, String> responseTemplates = new LinkedHashMap<String, String>();
+			responseTemplates.put(JSON, generateTemplate(n + 1));
+			response.setResponseTemplates(responseTemplates);
+			integrationResponses.put(r[0], response);
+		}
+		integration.setIntegrationResponses(integrationResponses);
+		return integration;
+	}
+
+	private String generateTemplate(int n) {
+		StringBuilder sb = new StringBuilder("{\n");
+		int fields = 3 + random.nextInt(8);
+		for (int i = 0; i < fields; i++) {
+			sb.append("  \"field").append(i).append("\": \"$input.path('$.field").append(n).append('_').append(i).append("')\",\n");
+		}
+		return sb.append("  \"requestId\": \"$context.requestId\"\n}").toString();
+	}
+
+	private ApiSnapshot.Model generateModel(int k, int modelCount) {
+		StringBuilder schema = new StringBuilder();
+		schema.append("{\"$schema\":\"http://json-schema.org/draft-04/schema#\",\"title\":\"")
+				.append(getModelName(k)).append("\",\"type\":\"object\",\"properties\":{");
+		int properties = 2 + random.nextInt(10);
+		for (int i = 0; i < properties; i++) {
+			schema.append("\"property").append(i).append("\":{\"type\":\"")
+					.append(PROPERTY_TYPES[random.nextInt(PROPERTY_TYPES.length)]).append("\"},");
+		}
+		schema.append("\"tags\":{\"type\":\"array\",\"items\":{\"type\":\"string\"}}");
+		if (k + 1 < modelCount && k % 3 == 0) {
+			schema.append(",\"child\":{\"$ref\":\"#/definitions/").append(getModelName(k + 1)).append("\"}");
+		}
+		schema.append("}}");
+
+		ApiSnapshot.Model model = new ApiSnapshot.Model();
+		model.setName(getModelName(k));
+		model.setDescription("Synthetic model " + k);
+		model.setSchema(schema.toString());
+		return model;
+	}
+
+	private static String getModelName(int k) {
+		return "Model" + k;
+	}
+}